@@ -0,0 +1,102 @@
+package edu.dsu.bpi;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A breakpoint condition such as data[5] >= 100, or sym14[3] < 7 in label mode, compiled once against
+ * the loaded program so testing it is two array reads and a compare. A comparison with an
+ * uninitialized location is never true.
+ */
+final class BreakCondition {
+    private static final Pattern DATA = Pattern.compile("data\\[(\\d+)\\]", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SYMBOL = Pattern.compile("sym(\\d+)(?:\\[(\\d+)\\])?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern CONSTANT = Pattern.compile("[-+]?\\d{1,10}");
+    private static final String[] OPERATORS = { "==", "!=", ">=", "<=", ">", "<" };
+
+    private final int leftAddress, rightAddress; // -1 for a constant
+    private final long leftValue, rightValue;
+    private final int operator; // index into OPERATORS
+
+    private BreakCondition(int leftAddress, long leftValue, int operator, int rightAddress, long rightValue) {
+        this.leftAddress = leftAddress;
+        this.leftValue = leftValue;
+        this.operator = operator;
+        this.rightAddress = rightAddress;
+        this.rightValue = rightValue;
+    }
+
+    static BreakCondition compile(String text, boolean labels, Map<Integer, Integer> symbols, Map<Integer, Integer> sizes,
+                                  int memorySize) {
+        String condition = text.replaceAll("\\s+", "");
+        int at = -1, operator = -1;
+        for (int i = 0; i < condition.length() && at == -1; i++) {
+            for (int j = 0; j < OPERATORS.length; j++) {
+                if (condition.startsWith(OPERATORS[j], i)) {
+                    at = i;
+                    operator = j;
+                    break;
+                }
+            }
+        }
+
+        if (at <= 0)
+            throw new IllegalArgumentException("the condition " + text + " isn't a comparison");
+
+        String left = condition.substring(0, at), right = condition.substring(at + OPERATORS[operator].length());
+        int leftAddress = address(left, labels, symbols, sizes, memorySize), rightAddress = address(right, labels, symbols, sizes, memorySize);
+        return new BreakCondition(leftAddress, (leftAddress == -1) ? constant(left) : 0, operator,
+                rightAddress, (rightAddress == -1) ? constant(right) : 0);
+    }
+
+    private static int address(String operand, boolean labels, Map<Integer, Integer> symbols, Map<Integer, Integer> sizes, int memorySize) {
+        Matcher m = DATA.matcher(operand);
+        if (m.matches()) {
+            int address = Integer.parseInt(m.group(1));
+            if (address >= memorySize)
+                throw new IllegalArgumentException("data location " + address + " is outside memory");
+
+            return address;
+        }
+
+        m = SYMBOL.matcher(operand);
+        if (m.matches()) {
+            if (!labels)
+                throw new IllegalArgumentException("data symbols can only be used in label mode");
+
+            int symbol = Integer.parseInt(m.group(1)), offset = (m.group(2) == null) ? 0 : Integer.parseInt(m.group(2));
+            if (!symbols.containsKey(symbol))
+                throw new IllegalArgumentException("data symbol " + symbol + " has not been defined");
+            if (offset >= sizes.get(symbol))
+                throw new IllegalArgumentException("offset " + offset + " is outside data symbol " + symbol);
+
+            return symbols.get(symbol) + offset;
+        }
+
+        if (!CONSTANT.matcher(operand).matches())
+            throw new IllegalArgumentException(operand.isEmpty() ? "the condition is missing an operand" : operand + " isn't a data location or a number");
+
+        return -1;
+    }
+
+    private static long constant(String operand) {
+        return Long.parseLong(operand.startsWith("+") ? operand.substring(1) : operand);
+    }
+
+    boolean test(long[] data) {
+        long a = (leftAddress == -1) ? leftValue : data[leftAddress];
+        long b = (rightAddress == -1) ? rightValue : data[rightAddress];
+        if (a == Long.MIN_VALUE || b == Long.MIN_VALUE)
+            return false;
+
+        switch (operator) {
+            case 0: return a == b;
+            case 1: return a != b;
+            case 2: return a >= b;
+            case 3: return a <= b;
+            case 4: return a > b;
+            default: return a < b;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package edu.dsu.bpi;
+
+/**
+ * A breakpoint on one program line. It can carry a condition, tested before the line runs, and a hit
+ * count, in which case it only breaks on that arrival at the line (counting only the arrivals where
+ * the condition holds). Hits start over whenever the program is reset.
+ */
+public final class Breakpoint {
+    private final int line;
+    private final String condition; // as entered, null for an unconditional breakpoint
+    private final int hitCount; // arrival to break on, 0 to break on every one
+    BreakCondition predicate; // compiled against the symbols of the loaded program
+    int hits;
+
+    Breakpoint(int line, String condition, int hitCount) {
+        this.line = line;
+        this.condition = condition;
+        this.hitCount = hitCount;
+    }
+
+    public int getLine() { return line; }
+    public String getCondition() { return condition; }
+    public int getHitCount() { return hitCount; }
+    public int getHits() { return hits; }
+    public boolean isConditional() { return condition != null || hitCount > 0; }
+
+    boolean trigger(long[] data) { // called once for each arrival at the line
+        if (predicate != null && !predicate.test(data))
+            return false;
+
+        hits++;
+        return hitCount == 0 || hits == hitCount;
+    }
+
+    @Override
+    public String toString() {
+        return "row " + line + ((condition != null) ? " when " + condition : "") + ((hitCount > 0) ? " on hit " + hitCount : "");
+    }
+}
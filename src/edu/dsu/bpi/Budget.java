@@ -0,0 +1,19 @@
+package edu.dsu.bpi;
+
+/**
+ * Execution budgets that can stop a run before the program ends. A run stopped by a budget is
+ * paused at a backward branch, not failed, and running again resumes it with the budgets started over.
+ */
+public enum Budget {
+    INSTRUCTIONS("Instruction budget of %d instructions"),
+    TIME("Time budget of %d ms"),
+    OUTPUT("Output budget of %d lines");
+
+    private final String format;
+
+    Budget(String format) {
+        this.format = format;
+    }
+
+    public String describe(long limit) { return String.format(format, limit); }
+}
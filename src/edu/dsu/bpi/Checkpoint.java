@@ -0,0 +1,212 @@
+package edu.dsu.bpi;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * Binary checkpoint of an interpreter (Interpreter.checkpoint and restore), written through a
+ * direct buffer to a channel. Big-endian, in this order:
+ *
+ *   int     magic, the bytes "BPIC", then the format version (VERSION)
+ *   int[3]  machine profile: memory words, input cards, program lines
+ *   string  file name, then a boolean for label mode
+ *   int     program size, then each line's opcode and operands (links, verifier guarantees and
+ *           superinstructions are rebuilt on restore, not trusted from the file)
+ *   map     file line of each program line, program labels, data symbols, data symbol sizes
+ *   runs    data memory right after loading, then the input cards loaded and the cards
+ *   runs    data memory now, then the input cards now (edits can add one) and the cards
+ *   int[4]  instruction pointer, last instruction pointer, input pointer, data symbol pointer
+ *   long    values printed, then instructions run by each tier, promotion line and promoted tier
+ *   lists   breakpoints, watchpoints and logpoints as entered, with their hits
+ *
+ * A string is a byte length (-1 for null) and UTF-8, a map a count and key, value pairs, and runs
+ * only the initialized words: a count, then each run's first address, length and values.
+ */
+final class Checkpoint {
+    static final int MAGIC = 0x42504943, VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private Checkpoint() {}
+
+    static final class Writer {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Writer(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes)
+                flush();
+        }
+
+        void putInt(int value) throws IOException { ensure(4); buffer.putInt(value); }
+        void putLong(long value) throws IOException { ensure(8); buffer.putLong(value); }
+        void putBoolean(boolean value) throws IOException { ensure(1); buffer.put((byte) (value ? 1 : 0)); }
+
+        void putString(String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+
+            byte[] bytes = value.getBytes(UTF8);
+            putInt(bytes.length);
+            for (int at = 0; at < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - at);
+                buffer.put(bytes, at, length);
+                at += length;
+            }
+        }
+
+        void putMap(Map<Integer, Integer> map) throws IOException {
+            putInt(map.size());
+            for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+                putInt(entry.getKey());
+                putInt(entry.getValue());
+            }
+        }
+
+        void putInts(int[] values, int count) throws IOException {
+            for (int i = 0; i < count; i++)
+                putInt(values[i]);
+        }
+
+        void putLongs(long[] values, int count) throws IOException {
+            for (int i = 0; i < count; i++)
+                putLong(values[i]);
+        }
+
+        void putRuns(long[] data, PagedMemory paged) throws IOException { // paged is null if there isn't any
+            int runs = 0;
+            for (int i = nextInitialized(data, paged, 0); i != -1; i = nextInitialized(data, paged, endOfRun(data, paged, i)))
+                runs++;
+
+            putInt(runs);
+            for (int i = nextInitialized(data, paged, 0); i != -1; ) {
+                int end = endOfRun(data, paged, i);
+                putInt(i);
+                putInt(end - i);
+                for (int address = i; address < end; address++)
+                    putLong((address < data.length) ? data[address] : paged.get(address));
+                i = nextInitialized(data, paged, end);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        private static int nextInitialized(long[] data, PagedMemory paged, int address) {
+            for (; address < data.length; address++) {
+                if (data[address] != Long.MIN_VALUE)
+                    return address;
+            }
+
+            return (paged == null) ? -1 : paged.nextInitialized(address);
+        }
+
+        private static int endOfRun(long[] data, PagedMemory paged, int address) { // first uninitialized address after a run starting here
+            for (; address < data.length; address++) {
+                if (data[address] == Long.MIN_VALUE)
+                    return address;
+            }
+
+            while (paged != null && paged.nextInitialized(address) == address)
+                address++;
+            return address;
+        }
+    }
+
+    static final class Reader {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Reader(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip(); // empty until the first read
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes)
+                return;
+
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0)
+                    throw new EOFException("The checkpoint ends early");
+            }
+            buffer.flip();
+        }
+
+        int getInt() throws IOException { ensure(4); return buffer.getInt(); }
+        long getLong() throws IOException { ensure(8); return buffer.getLong(); }
+        boolean getBoolean() throws IOException { ensure(1); return buffer.get() != 0; }
+
+        int getCount(int max, String what) throws IOException { // a length that has to fit the machine
+            int count = getInt();
+            if (count < 0 || count > max)
+                throw new IOException("The checkpoint has " + count + " " + what + ", more than the machine holds");
+
+            return count;
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length < 0)
+                return null;
+
+            byte[] bytes = new byte[length];
+            for (int at = 0; at < length; ) {
+                ensure(1);
+                int part = Math.min(buffer.remaining(), length - at);
+                buffer.get(bytes, at, part);
+                at += part;
+            }
+
+            return new String(bytes, UTF8);
+        }
+
+        void getMap(Map<Integer, Integer> map, int max) throws IOException {
+            for (int i = getCount(max, "table entries"); i > 0; i--)
+                map.put(getInt(), getInt());
+        }
+
+        void getInts(int[] values, int count) throws IOException {
+            for (int i = 0; i < count; i++)
+                values[i] = getInt();
+        }
+
+        void getLongs(long[] values, int count) throws IOException {
+            for (int i = 0; i < count; i++)
+                values[i] = getLong();
+        }
+
+        void getRuns(long[] data, PagedMemory paged, int memoryWords) throws IOException {
+            for (int runs = getInt(); runs > 0; runs--) {
+                int first = getInt(), length = getInt();
+                if (first < 0 || length < 0 || (long) first + length > memoryWords)
+                    throw new IOException("The checkpoint's data doesn't fit in memory");
+
+                for (int address = first; address < first + length; address++) {
+                    long value = getLong();
+                    if (address < data.length)
+                        data[address] = value;
+                    else
+                        paged.set(address, value);
+                }
+            }
+        }
+    }
+}
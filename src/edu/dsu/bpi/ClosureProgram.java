@@ -0,0 +1,455 @@
+package edu.dsu.bpi;
+
+/**
+ * Cheap middle tier between the interpreter and ProgramCompiler. Every card becomes a node object
+ * with its operands and resolved addresses bound up front, so running a program is a chain of
+ * calls from one node to the next without decoding or a switch. Building the nodes is a single
+ * pass over the program, which pays off even for programs that only run briefly.
+ */
+public final class ClosureProgram extends CompiledProgram {
+    private final Node[] nodes; // where each line is entered from, a Loop node in front of a recognized loop
+    private int stopLine;
+    private long count; // nodes run by the current call to execute, a field so backward branches can check the instruction budget
+    private long bulkCount; // instructions run in bulk by Loop nodes beyond the one node count
+
+    // promotion to the next tier, a backward branch pauses the program once its count reaches the threshold
+    int[] backwardBranchCounts;
+    int promoteThreshold = Integer.MAX_VALUE;
+
+    private ClosureProgram(int programSize) {
+        nodes = new Node[programSize];
+    }
+
+    public static ClosureProgram compile(DecodedProgram program, int programSize) {
+        ClosureProgram closure = new ClosureProgram(programSize);
+        LoopIdioms idioms = LoopIdioms.recognize(program, programSize);
+        Node[] lines = new Node[programSize];
+        for (int i = 0; i < programSize; i++) {
+            lines[i] = createNode(program, i);
+            closure.nodes[i] = idioms.isHead(i) ? new Loop(i, lines[i]) : lines[i];
+        }
+
+        // link each node to the line after it, and branches to their targets
+        for (int i = 0; i < programSize; i++) {
+            Node node = lines[i];
+            node.next = (i + 1 < programSize) ? closure.nodes[i + 1] : new Missing(programSize, i);
+
+            if (node instanceof Branch) {
+                int target = program.target[i];
+                boolean loopTail = idioms.isHead(target) && idioms.getTail(target) == i; // going around doesn't retry the bulk run
+                ((Branch) node).taken = (target >= 0 && target < programSize) ? (loopTail ? lines[target] : closure.nodes[target]) : new Missing(target, i);
+                ((Branch) node).backward = target <= i;
+                ((Branch) node).target = target;
+            }
+
+            if (closure.nodes[i] instanceof Loop)
+                ((Loop) closure.nodes[i]).exit = closure.nodes[idioms.getTail(i) + 1]; // verified to exist
+        }
+
+        return closure;
+    }
+
+    @Override
+    protected int execute(long[] data, int start) throws Exception {
+        Node node = (start >= 0 && start < nodes.length) ? nodes[start] : new Missing(start, -1);
+        count = 0;
+        bulkCount = 0;
+
+        try {
+            while (node != null) {
+                node = node.run(this, data);
+                count++;
+            }
+        } catch (Exception e) {
+            if (!(e instanceof ProgramFault && ((ProgramFault) e).getFault() == Fault.MISSING_LINE))
+                count++; // the node that faulted, a missing line never ran
+            throw e;
+        } finally {
+            instructionCount = count + bulkCount;
+        }
+
+        return stopLine;
+    }
+
+    private static Node createNode(DecodedProgram program, int line) {
+        int a1 = program.addr1[line], a2 = program.addr2[line], a3 = program.addr3[line];
+
+        switch (program.opcodes[line]) {
+            case Opcode.MOVE: return new Move(line, a1, a3);
+            case Opcode.ADD: return new Add(line, a1, a2, a3);
+            case Opcode.SUBTRACT: return new Subtract(line, a1, a2, a3);
+            case Opcode.MULTIPLY: return new Multiply(line, a1, a2, a3);
+            case Opcode.DIVIDE: return new Divide(line, a1, a2, a3);
+            case Opcode.SQUARE: return new Square(line, a1, a3);
+            case Opcode.ROOT: return new Root(line, a1, a3);
+            case Opcode.EQUAL: return new Equal(line, a1, a2);
+            case Opcode.UNEQUAL: return new Unequal(line, a1, a2);
+            case Opcode.GREATER_THAN_EQUAL: return new GreaterThanEqual(line, a1, a2);
+            case Opcode.LESS_THAN: return new LessThan(line, a1, a2);
+            case Opcode.FROM_ARRAY: return new FromArray(line, a1, a2, a3, program.bound[line], program.opn1[line]);
+            case Opcode.TO_ARRAY: return new ToArray(line, a1, a2, a3, program.bound[line], program.opn2[line]);
+            case Opcode.INCREMENT_AND_TEST: return new IncrementAndTest(line, a1, a2);
+            case Opcode.READ: return new Read(line, a3);
+            case Opcode.PRINT: return new Print(line, a1);
+            case Opcode.UNSUPPORTED_0: return new Unsupported(line, 0);
+            case Opcode.LABEL: return new Unsupported(line, 7);
+            case Opcode.UNSUPPORTED_9: return new Unsupported(line, 9);
+            case Opcode.HALT: // the interpreter doesn't treat an end card on line 0 as the end of the program
+                return (line > 0) ? new Halt(line) : new Nop(line);
+            default:
+                return new Nop(line); // +9 with operands doesn't end the program
+        }
+    }
+
+    private abstract static class Node {
+        final int line;
+        Node next;
+
+        Node(int line) {
+            this.line = line;
+        }
+
+        abstract Node run(ClosureProgram p, long[] data) throws Exception; // returns the node to run next, null to stop
+    }
+
+    private abstract static class Branch extends Node { // compare and +7 cards, go to taken if the test passes
+        final int a1, a2;
+        Node taken;
+        boolean backward;
+        int target;
+
+        Branch(int line, int a1, int a2) {
+            super(line);
+            this.a1 = a1;
+            this.a2 = a2;
+        }
+
+        final Node branch(ClosureProgram p, boolean test) {
+            if (!test)
+                return next;
+
+            // hot enough for the next tier, or the interpreter wants to look at the state or stop on a budget
+            if (backward && (++p.backwardBranchCounts[line] >= p.promoteThreshold || p.pause(line, target) && p.stop(p.count + 1 + p.bulkCount))) {
+                p.lastLine = line;
+                p.nextLine = target;
+                p.stopLine = PAUSED;
+                return null;
+            }
+
+            return taken;
+        }
+    }
+
+    private static final class Move extends Node {
+        private final int a1, a3;
+
+        Move(int line, int a1, int a3) {
+            super(line);
+            this.a1 = a1;
+            this.a3 = a3;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            data[a3] = p.read(data, a1, line);
+            return next;
+        }
+    }
+
+    private static final class Add extends Node {
+        private final int a1, a2, a3;
+
+        Add(int line, int a1, int a2, int a3) {
+            super(line);
+            this.a1 = a1;
+            this.a2 = a2;
+            this.a3 = a3;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            data[a3] = p.arith(p.read(data, a1, line) + p.read(data, a2, line), line);
+            return next;
+        }
+    }
+
+    private static final class Subtract extends Node {
+        private final int a1, a2, a3;
+
+        Subtract(int line, int a1, int a2, int a3) {
+            super(line);
+            this.a1 = a1;
+            this.a2 = a2;
+            this.a3 = a3;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            data[a3] = p.arith(p.read(data, a1, line) - p.read(data, a2, line), line);
+            return next;
+        }
+    }
+
+    private static final class Multiply extends Node {
+        private final int a1, a2, a3;
+
+        Multiply(int line, int a1, int a2, int a3) {
+            super(line);
+            this.a1 = a1;
+            this.a2 = a2;
+            this.a3 = a3;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            data[a3] = p.arith(p.multiply(p.read(data, a1, line), p.read(data, a2, line), line), line);
+            return next;
+        }
+    }
+
+    private static final class Divide extends Node {
+        private final int a1, a2, a3;
+
+        Divide(int line, int a1, int a2, int a3) {
+            super(line);
+            this.a1 = a1;
+            this.a2 = a2;
+            this.a3 = a3;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            data[a3] = p.arith(p.divide(p.read(data, a1, line), p.read(data, a2, line), line), line);
+            return next;
+        }
+    }
+
+    private static final class Square extends Node {
+        private final int a1, a3;
+
+        Square(int line, int a1, int a3) {
+            super(line);
+            this.a1 = a1;
+            this.a3 = a3;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            long a = p.read(data, a1, line);
+            data[a3] = p.arith(p.multiply(a, a, line), line);
+            return next;
+        }
+    }
+
+    private static final class Root extends Node {
+        private final int a1, a3;
+
+        Root(int line, int a1, int a3) {
+            super(line);
+            this.a1 = a1;
+            this.a3 = a3;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            data[a3] = p.arith((long) Math.sqrt(p.read(data, a1, line)), line);
+            return next;
+        }
+    }
+
+    private static final class Equal extends Branch {
+        Equal(int line, int a1, int a2) {
+            super(line, a1, a2);
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            return branch(p, p.read(data, a1, line) == p.read(data, a2, line));
+        }
+    }
+
+    private static final class Unequal extends Branch {
+        Unequal(int line, int a1, int a2) {
+            super(line, a1, a2);
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            return branch(p, p.read(data, a1, line) != p.read(data, a2, line));
+        }
+    }
+
+    private static final class GreaterThanEqual extends Branch {
+        GreaterThanEqual(int line, int a1, int a2) {
+            super(line, a1, a2);
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            return branch(p, p.read(data, a1, line) >= p.read(data, a2, line));
+        }
+    }
+
+    private static final class LessThan extends Branch {
+        LessThan(int line, int a1, int a2) {
+            super(line, a1, a2);
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            return branch(p, p.read(data, a1, line) < p.read(data, a2, line));
+        }
+    }
+
+    private static final class IncrementAndTest extends Branch {
+        IncrementAndTest(int line, int a1, int a2) {
+            super(line, a1, a2);
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            long counter = data[a1] = p.read(data, a1, line) + 1;
+            return branch(p, counter < p.read(data, a2, line));
+        }
+    }
+
+    private static final class FromArray extends Node {
+        private final int a1, a2, a3, bound, symbol;
+
+        FromArray(int line, int a1, int a2, int a3, int bound, int symbol) {
+            super(line);
+            this.a1 = a1;
+            this.a2 = a2;
+            this.a3 = a3;
+            this.bound = bound;
+            this.symbol = symbol;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            data[a3] = p.readArray(data, a1, p.read(data, a2, line), bound, symbol, line);
+            return next;
+        }
+    }
+
+    private static final class ToArray extends Node {
+        private final int a1, a2, a3, bound, symbol;
+
+        ToArray(int line, int a1, int a2, int a3, int bound, int symbol) {
+            super(line);
+            this.a1 = a1;
+            this.a2 = a2;
+            this.a3 = a3;
+            this.bound = bound;
+            this.symbol = symbol;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            long value = p.read(data, a1, line);
+            p.writeArray(data, a2, value, p.read(data, a3, line), bound, symbol, line);
+            return next;
+        }
+    }
+
+    private static final class Read extends Node {
+        private final int a3;
+
+        Read(int line, int a3) {
+            super(line);
+            this.a3 = a3;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            data[a3] = p.readInput(line);
+            return next;
+        }
+    }
+
+    private static final class Print extends Node {
+        private final int a1;
+
+        Print(int line, int a1) {
+            super(line);
+            this.a1 = a1;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            p.print(p.read(data, a1, line));
+            return next;
+        }
+    }
+
+    private static final class Unsupported extends Node {
+        private final int digit;
+
+        Unsupported(int line, int digit) {
+            super(line);
+            this.digit = digit;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            throw p.unsupported(digit, line);
+        }
+    }
+
+    private static final class Nop extends Node {
+        Nop(int line) {
+            super(line);
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) {
+            return next;
+        }
+    }
+
+    private static final class Halt extends Node {
+        Halt(int line) {
+            super(line);
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) {
+            p.stopLine = line;
+            return null;
+        }
+    }
+
+    private static final class Loop extends Node { // in front of a recognized loop's first line
+        private final Node body;
+        Node exit;
+
+        Loop(int line, Node body) {
+            super(line);
+            this.body = body;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws Exception {
+            long count = p.loop(data, line, p.count + p.bulkCount);
+            if (count < 0)
+                return body.run(p, data);
+
+            p.bulkCount += count - 1;
+            return exit;
+        }
+    }
+
+    private static final class Missing extends Node { // a line without a card, reached from line from
+        private final int from;
+
+        Missing(int line, int from) {
+            super(line);
+            this.from = from;
+        }
+
+        @Override
+        Node run(ClosureProgram p, long[] data) throws ProgramFault {
+            throw p.missing(line, from);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package edu.dsu.bpi;
+
+public abstract class CompiledProgram {
+    public static final int PAUSED = -1; // execute stopped at a hot branch, nextLine is where to resume
+
+    // runtime state shared with the interpreter while the compiled code runs
+    protected long[] input;
+    protected int inputPointer;
+    protected OutputListener outputListener;
+    protected int lastLine, nextLine; // instruction pointers at a fault or pause, only valid once execute has thrown or paused
+    protected long instructionCount; // instructions run by the last call to execute
+    protected int backwardBranchBudget = Integer.MAX_VALUE; // backward branches left before execute pauses, so the interpreter can look at the state
+    protected long printCount; // values printed by the last call to execute
+
+    // what's left of the interpreter's execution budgets, execute pauses at the first backward branch after one runs out
+    // with budgets, backwardBranchBudget is kept at 1 so every backward branch checks them, and sliceBudget takes its place
+    protected boolean budgeted;
+    protected int sliceBudget;
+    protected long instructionBudget = Long.MAX_VALUE, printBudget = Long.MAX_VALUE;
+    protected boolean timed; // the clock is only read every CLOCK_INTERVAL backward branches, and only if there's a deadline
+    protected long deadline; // System.nanoTime()
+    private int clockCountdown;
+    static final int CLOCK_INTERVAL = 1 << 12;
+    LoopIdioms loops; // null if loops always run line by line
+    PagedMemory highMemory; // words past data.length, null if the profile doesn't have any
+    int memoryWords; // for the range fault messages
+
+    protected CompiledProgram() {}
+
+    // runs from the start line until the end card and returns its line (or PAUSED)
+    protected abstract int execute(long[] data, int start) throws Exception;
+
+    // Helpers called from compiled code, messages match the interpreter's
+    protected final long read(long[] data, int address, int line) throws ProgramFault {
+        long value = data[address];
+        if (value == Long.MIN_VALUE)
+            throw fault(Fault.UNINITIALIZED_READ, address, 0, line);
+
+        return value;
+    }
+
+    protected final long arith(long result, int line) throws ProgramFault {
+        if (result > 9999999999L)
+            throw fault(Fault.OVERFLOW, result, 1, line);
+        else if (result < -9999999999L)
+            throw fault(Fault.UNDERFLOW, result, 1, line);
+
+        return result;
+    }
+
+    protected final long multiply(long a, long b, int line) throws ProgramFault {
+        try {
+            return Interpreter.multiply(a, b);
+        } catch (ProgramFault f) {
+            at(line);
+            throw f;
+        }
+    }
+
+    protected final long divide(long a, long b, int line) throws ProgramFault {
+        if (b == 0)
+            throw fault(Fault.DIVIDE_BY_ZERO, a, 0, line);
+
+        return a / b;
+    }
+
+    protected final boolean pause(int line, int target) { // called on every backward branch, true once the budget is used up
+        if (--backwardBranchBudget > 0)
+            return false;
+
+        lastLine = line;
+        nextLine = target;
+        return true;
+    }
+
+    protected final boolean stop(long count) { // called when pause returns true with the instructions run so far, false to carry on
+        return !budgeted || !withinBudgets(count);
+    }
+
+    protected final boolean sliceEnded() { // paused because the interpreter wants to look at the state
+        return ((budgeted) ? sliceBudget : backwardBranchBudget) <= 0;
+    }
+
+    private boolean withinBudgets(long count) {
+        if (--sliceBudget <= 0 || count >= instructionBudget || printCount >= printBudget || pastDeadline())
+            return false;
+
+        backwardBranchBudget = 1;
+        return true;
+    }
+
+    private boolean pastDeadline() {
+        if (!timed || --clockCountdown > 0)
+            return false;
+
+        clockCountdown = CLOCK_INTERVAL;
+        return System.nanoTime() - deadline >= 0;
+    }
+
+    protected final long loop(long[] data, int head, long count) { // instructions run by a recognized loop in bulk, or -1 to run it line by line
+        return (loops == null) ? -1 : loops.run(data, head, instructionBudget - count);
+    }
+
+    protected final long readArray(long[] data, int base, long index, int bound, int symbol, int line) throws ProgramFault {
+        at(line); // set up front, the array access itself may throw
+        int offset = (int) index;
+        if (bound != Integer.MAX_VALUE && bound <= offset) // unbounded in raw mode
+            throw new ProgramFault(Fault.OFFSET_OUT_OF_BOUNDS, offset, symbol);
+
+        int address = base + offset;
+        if (address < 0 || address > data.length - 1)
+            return readPaged(address);
+
+        return read(data, address, line);
+    }
+
+    protected final void writeArray(long[] data, int base, long value, long index, int bound, int symbol, int line) throws ProgramFault {
+        at(line);
+        int offset = (int) index;
+        if (bound != Integer.MAX_VALUE && bound <= offset) // unbounded in raw mode
+            throw new ProgramFault(Fault.OFFSET_OUT_OF_BOUNDS, offset, symbol);
+
+        int address = base + offset;
+        if (address < 0 || address > data.length - 1) {
+            if (highMemory == null || address < 0 || address >= memoryWords) // a negative offset is out of range too
+                throw new ProgramFault(Fault.WRITE_OUT_OF_RANGE, address, memoryWords - 1);
+
+            highMemory.set(address, value);
+        } else
+            data[address] = value;
+    }
+
+    private long readPaged(int address) throws ProgramFault { // the line was already set by readArray
+        if (highMemory == null || address < 0 || address >= memoryWords)
+            throw new ProgramFault(Fault.READ_OUT_OF_RANGE, address, memoryWords - 1);
+
+        long value = highMemory.get(address);
+        if (value == Long.MIN_VALUE)
+            throw new ProgramFault(Fault.UNINITIALIZED_READ, address);
+
+        return value;
+    }
+
+    protected final long readInput(int line) throws ProgramFault {
+        at(line);
+        if (input[inputPointer] == Long.MIN_VALUE)
+            throw new ProgramFault(Fault.INPUT_EXHAUSTED, inputPointer);
+
+        return input[inputPointer++];
+    }
+
+    protected final void print(long value) {
+        printCount++;
+        if (outputListener != null)
+            outputListener.valuePrinted(value);
+    }
+
+    protected final ProgramFault unsupported(int digit, int line) { // -0, -7 or -9
+        return fault(Fault.UNSUPPORTED_OPERATION, digit, 0, line);
+    }
+
+    protected final ProgramFault missing(int line, int from) { // branch or fall-through to a line without a card
+        lastLine = from;
+        nextLine = line;
+        return new ProgramFault(Fault.MISSING_LINE, line);
+    }
+
+    // the interpreter adds the file line once the fault reaches it
+    private ProgramFault fault(Fault fault, long detail1, long detail2, int line) {
+        at(line);
+        return new ProgramFault(fault, detail1, detail2);
+    }
+
+    private void at(int line) {
+        lastLine = line;
+        nextLine = line + 1;
+    }
+}
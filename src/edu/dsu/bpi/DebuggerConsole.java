@@ -1,17 +1,79 @@
 package edu.dsu.bpi;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class DebuggerConsole {
+    private static final Pattern INPUT_CARD = Pattern.compile("(?i)input\\[(\\d+)\\]");
+    private static final int MAX_FORKS = 64; // each fork copies the data memory and its bitsets
+
     Interpreter interp;
+    private StringBuilder sbPrint;
+    private boolean debug;
 
     public DebuggerConsole(Interpreter interp, boolean debug) {
+        this(interp, debug, false);
+    }
+
+    public DebuggerConsole(Interpreter interp, boolean debug, boolean fast) {
         this.interp = interp;
-        runProgram(debug);
+        this.debug = debug;
+        this.sbPrint = new StringBuilder();
+        interp.setStepListener(new StepListener() {
+            @Override
+            public void stepExecuted(StepEvent event) {
+                if (DebuggerConsole.this.debug)
+                    System.out.println(event.getLine() + ":\t" + Interpreter.getResultOutput(event));
+            }
+        });
+        interp.setOutputListener(new OutputListener() {
+            @Override
+            public void valuePrinted(long value) {
+                appendString(sbPrint, Long.toString(value)); // preserve result of print statement for later
+            }
+        });
+
+        interp.setWatchListener(new WatchListener() {
+            @Override
+            public void watchpointHit(Watchpoint watchpoint, int line, int address, boolean write, long value) {
+                System.out.println(watchpoint.describeHit(line, address, write, value));
+            }
+        });
+
+        interp.setLogListener(new LogListener() {
+            @Override
+            public void logged(String message) {
+                System.out.println(message);
+            }
+        });
+
+        if (fast)
+            runFast();
+        else
+            runProgram();
     }
 
-    private void runProgram(boolean debug) {
-        StringBuilder sbPrint = new StringBuilder();
+    private void runFast() { // batch run: no header, no debugging and no interactive breakpoints
+        try {
+            boolean completed = runToCompletion();
+
+            if (sbPrint.length() > 0)
+                System.out.println(sbPrint);
+            if (!completed) // only a budget can stop a batch run early
+                System.out.println(interp.getHaltMessage());
+        } catch (Exception e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    private void runProgram() {
         boolean step = false;
         String input;
 
@@ -20,7 +82,7 @@ public class DebuggerConsole {
         ) {
             System.out.println("Labels: " + ((interp.getLabelsEnabled()) ? "ENABLED" : "DISABLED"));
             while (!interp.programComplete()) {
-                runProgram(sbPrint, step, debug);
+                runProgram(step);
 
                 if (!interp.programComplete()) { // if the program halts before completion (breakpoint)
                     step = true; // enable stepping after breakpoint is triggered
@@ -38,6 +100,24 @@ public class DebuggerConsole {
                         } else if (input.equalsIgnoreCase("q")) {
                             System.out.println("End program.");
                             return; // force quit
+                        } else if (input.equalsIgnoreCase("b")) { // list the breakpoints
+                            debug = true;
+                            if (interp.getBreakpointCount() == 0)
+                                System.out.println("No breakpoints are set.");
+                            for (Breakpoint breakpoint : interp.getBreakpoints())
+                                System.out.println("Breakpoint on " + breakpoint + " (" + breakpoint.getHits() + " hit" + ((breakpoint.getHits() == 1) ? "" : "s") + ")");
+                        } else if (input.trim().matches("(?i)t(\\s.*)?")) { // list, set or unset logpoints
+                            debug = true;
+                            logCommand(input.trim());
+                        } else if (input.trim().matches("(?i)r?w(\\s.*)?")) { // list, toggle or replace watchpoints
+                            debug = true;
+                            watchCommand(input.trim());
+                        } else if (input.trim().matches("(?i)f(\\s.*)?")) { // run copies of the program from here, each with its own edits
+                            debug = true;
+                            forkCommand(input.trim());
+                        } else if (input.trim().matches("-?\\d+\\s+.*")) { // line followed by a condition and/or hit count
+                            debug = true;
+                            System.out.println(interp.setBreakpoint(input));
                         } else {
                             debug = true;
                             try {
@@ -58,32 +138,24 @@ public class DebuggerConsole {
         }
     }
 
-    private void runProgram(StringBuilder sbPrint, boolean step, boolean debug) throws Exception {
-        ResultData resultData;
-
+    private void runProgram(boolean step) throws Exception {
         try {
-            while (!interp.programComplete()) {
-                resultData = interp.runNextInstruction();
+            if (!step && !debug) {
+                if (!runToCompletion())
+                    System.out.println(interp.getHaltMessage());
+            } else {
+                while (!interp.programComplete()) {
+                    runNextInstruction();
 
-                if (debug) {
-                    String debugString = Interpreter.getResultOutput(resultData);
-                    System.out.println(interp.getLastInstructionPointer() + ":\t" + debugString);
-                }
+                    if (interp.breakpointTriggered() | interp.getTriggeredWatchpoint() != null | interp.getExhaustedBudget() != null) { // count the arrival either way
+                        step = true; // force a break
+                        System.out.println(interp.getHaltMessage());
+                        break;
+                    }
 
-                Instruction inst = resultData.getInstruction();
-                if (!inst.getPositive() && inst.getOp() == 8) {
-                    // preserve result of print statement for later
-                    appendString(sbPrint, Long.toString(resultData.getResult()[0]));
+                    if (step)
+                        break;
                 }
-
-                if (interp.breakpointSetOnInstructionPointer()) {
-                    step = true; // force a break
-                    System.out.println("Breakpoint triggered on row " + interp.getInstructionPointer());
-                    break;
-                }
-
-                if (step)
-                    break;
             }
 
             if (interp.programComplete() && sbPrint.length() > 0) { // full print to console
@@ -100,6 +172,166 @@ public class DebuggerConsole {
         }
     }
 
+    private boolean runToCompletion() throws Exception {
+        try {
+            return interp.runToCompletion();
+        } finally {
+            interp.flushLogs(); // logs come out before whatever is printed next
+        }
+    }
+
+    private void runNextInstruction() throws Exception {
+        try {
+            interp.runNextInstruction();
+        } finally {
+            interp.flushLogs();
+        }
+    }
+
+    private void logCommand(String command) {
+        String[] parts = command.split("\\s+", 2);
+        if (parts.length == 1) {
+            if (interp.getLogpoints().isEmpty())
+                System.out.println("No logpoints are set.");
+            for (Logpoint logpoint : interp.getLogpoints())
+                System.out.println("Logpoint on " + logpoint + " (" + logpoint.getHits() + " pass" + ((logpoint.getHits() == 1) ? "" : "es") + ")");
+        } else if (parts[1].contains(":"))
+            System.out.println(interp.setLogpoint(parts[1]));
+        else {
+            try {
+                System.out.println(interp.removeLogpoint(Integer.parseInt(parts[1])));
+            } catch (NumberFormatException e) {
+                System.out.println("Logpoint not unset because " + parts[1] + " isn't a line number");
+            }
+        }
+    }
+
+    private void watchCommand(String command) {
+        String[] parts = command.split("\\s+", 2);
+        if (parts.length == 1) {
+            if (interp.getWatchpoints().isEmpty())
+                System.out.println("No watchpoints are set.");
+            for (Watchpoint watchpoint : interp.getWatchpoints())
+                System.out.println("Watchpoint on " + watchpoint + " (" + watchpoint.getHits() + " hit" + ((watchpoint.getHits() == 1) ? "" : "s") + ")");
+            return;
+        }
+
+        boolean reads = parts[0].equalsIgnoreCase("rw");
+        String location = parts[1];
+        boolean halt = !location.toLowerCase().matches(".*\\slog");
+        if (!halt)
+            location = location.substring(0, location.length() - 3).trim();
+
+        Watchpoint existing = interp.getWatchpoint(location);
+        if (existing != null && existing.watchesReads() == reads && existing.halts() == halt) // same watchpoint again unsets it
+            System.out.println(interp.removeWatchpoint(location));
+        else
+            System.out.println(interp.setWatchpoint(location, reads, halt));
+    }
+
+    private void forkCommand(String command) { // f #count, or f edits | edits | ... for one fork per group of edits
+        String[] parts = command.split("\\s+", 2);
+        if (parts.length == 1) {
+            System.out.println("Give a number of forks or their edits, e.g. f 3 or f data[4]=10 | data[4]=20, input[0]=5");
+            return;
+        }
+
+        String[] edits;
+        if (parts[1].matches("\\d+")) {
+            int count;
+            try {
+                count = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                count = -1;
+            }
+
+            if (count < 1 || count > MAX_FORKS) {
+                System.out.println("Forks not run because the count has to be from 1 to " + MAX_FORKS + ", e.g. f 3");
+                return;
+            }
+            edits = new String[count];
+        } else
+            edits = parts[1].split("\\|");
+
+        if (edits.length > MAX_FORKS) {
+            System.out.println("Forks not run because at most " + MAX_FORKS + " groups of edits can be given");
+            return;
+        }
+
+        List<Interpreter> forks = interp.fork(edits.length);
+        List<Callable<String>> runs = new ArrayList<>();
+        for (int i = 0; i < edits.length; i++) {
+            String name = "Fork " + (i + 1) + ((edits[i] == null) ? "" : " (" + edits[i].trim() + ")");
+            try {
+                if (edits[i] != null)
+                    applyEdits(forks.get(i), edits[i]);
+                runs.add(runFork(forks.get(i), name));
+            } catch (Exception e) {
+                System.out.println(name + " not run: " + e.getMessage());
+            }
+        }
+
+        if (edits.length == 0)
+            System.out.println("No forks to run.");
+        if (runs.isEmpty())
+            return;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(runs.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            for (Future<String> report : pool.invokeAll(runs)) // in the order the forks were given
+                System.out.println(report.get());
+        } catch (Exception e) {
+            System.out.println("Forks interrupted: " + e.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void applyEdits(Interpreter fork, String edits) throws Exception { // location=value, ...
+        for (String edit : edits.split(",")) {
+            String[] sides = edit.split("=");
+            if (sides.length != 2)
+                throw new Exception(edit.trim() + " isn't location=value");
+
+            long value;
+            try {
+                value = Long.parseLong(sides[1].trim());
+            } catch (NumberFormatException e) {
+                throw new Exception(sides[1].trim() + " isn't a number");
+            }
+
+            Matcher card = INPUT_CARD.matcher(sides[0].trim());
+            if (card.matches())
+                fork.editInput(Integer.parseInt(card.group(1)), value);
+            else
+                fork.editData(sides[0], value);
+        }
+    }
+
+    private static Callable<String> runFork(final Interpreter fork, final String name) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                final StringBuilder report = new StringBuilder(name + ":");
+                fork.setOutputListener(new OutputListener() {
+                    @Override
+                    public void valuePrinted(long value) {
+                        report.append(System.getProperty("line.separator")).append(value);
+                    }
+                });
+
+                try {
+                    if (!fork.runToCompletion())
+                        report.append(System.getProperty("line.separator")).append(fork.getHaltMessage());
+                } catch (Exception e) {
+                    report.append(System.getProperty("line.separator")).append("Error: ").append(e.getMessage());
+                }
+
+                return report.toString();
+            }
+        };
+    }
+
     private void appendString(StringBuilder sb, String string) {
         if (sb.length() > 0)
             sb.append(System.getProperty("line.separator"));
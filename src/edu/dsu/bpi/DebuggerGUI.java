@@ -16,8 +16,12 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class DebuggerGUI {
+    private static final long RUN_TIME_LIMIT = 10000; // ms, a run stops there and can be resumed, so a runaway program doesn't freeze the window
+    private static final int MAX_CHANGED_ROWS = 64; // past this many changed data rows, repainting the whole table is cheaper
+
     private Interpreter interp;
     private DebugWindow debugWindow;
     private HelpWindow helpWindow;
@@ -28,16 +32,22 @@ public class DebuggerGUI {
     private AbstractTableModel atmProgramModel;
     private AbstractTableModel atmInputModel;
     private AbstractTableModel atmDataSymbolModel;
+    private final ConcurrentLinkedQueue<String> pendingLogs = new ConcurrentLinkedQueue<>(); // from the log formatting thread
     private AbstractTableModel atmProgramLabelModel;
+    private int dataRowsShown; // rows the data table was last told about
+    private int dataLocationHighlighted = -1; // last written location when the data table was last updated
 
     private StringBuilder sbOutput;
+    private StringBuilder loadReport = new StringBuilder(); // shown again when the program is reset
 
     private boolean brokeWithError;
     private StringBuilder sbPrint;
+    private boolean debugOutput;
     private boolean enableLabels;
 
     public DebuggerGUI(Interpreter interp) {
         this.interp = interp;
+        interp.setTimeLimit(RUN_TIME_LIMIT);
         this.debugWindow = new DebugWindow();
         this.helpWindow = new HelpWindow();
         this.aboutDialog = new AboutDialog(debugWindow);
@@ -49,12 +59,12 @@ public class DebuggerGUI {
         initializeRenderers();
         setMenuHandlers();
         setMouseListeners();
+        setListeners();
     }
 
     private void initializeTableModels() {
         atmDataModel = new AbstractTableModel() {
             String[] header = {"#", "Value"};
-            Integer[] usedDataLocations = null;
 
             @Override
             public String getColumnName(int index) {
@@ -63,8 +73,7 @@ public class DebuggerGUI {
 
             @Override
             public int getRowCount() {
-                usedDataLocations = interp.getUsedDataLocations().toArray(new Integer[interp.getUsedDataLocations().size()]);
-                return usedDataLocations.length;
+                return interp.getWrittenLocations().cardinality();
             }
 
             @Override
@@ -77,9 +86,9 @@ public class DebuggerGUI {
                 if (interp == null)
                     return null;
                 else if (columnIndex == 0)
-                    return Integer.toString(usedDataLocations[rowIndex]);
+                    return Integer.toString(interp.getWrittenLocations().select(rowIndex));
                 else {
-                    long cell = interp.accessData(usedDataLocations[rowIndex]);
+                    long cell = interp.accessData(interp.getWrittenLocations().select(rowIndex));
 
                     if (cell == Long.MIN_VALUE)
                         return "";
@@ -291,6 +300,7 @@ public class DebuggerGUI {
                         appendString(returnOutput, "Error: " + e.getMessage());
                         disableInterpreterActions();
                     } finally {
+                        loadReport = returnOutput;
                         clearOutput();
                         updateOutput(returnOutput);
                         updateTables();
@@ -315,6 +325,7 @@ public class DebuggerGUI {
                     appendString(returnOutput, "Error: " + e.getMessage());
                     disableInterpreterActions();
                 } finally {
+                    loadReport = returnOutput;
                     clearOutput();
                     updateOutput(returnOutput);
                     updateTables();
@@ -463,7 +474,9 @@ public class DebuggerGUI {
             public void mouseReleased(MouseEvent e) {
                 super.mouseReleased(e);
 
-                if (!interp.breakpointSetOnRow(clickStartRow))
+                if (SwingUtilities.isRightMouseButton(e)) // right click for conditional breakpoints and logpoints
+                    showProgramMenu(e, ((JTable) e.getSource()).rowAtPoint(e.getPoint()));
+                else if (!interp.breakpointSetOnRow(clickStartRow))
                     interp.setBreakpoint(clickStartRow);
                 else
                     interp.removeBreakpoint(clickStartRow);
@@ -473,13 +486,165 @@ public class DebuggerGUI {
                 clickStartRow = -1;
             }
         });
+
+        // right click a data location or data symbol to watch it
+        debugWindow.getDataTable().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                super.mouseReleased(e);
+                int row = debugWindow.getDataTable().rowAtPoint(e.getPoint());
+                if (SwingUtilities.isRightMouseButton(e) && row >= 0)
+                    showWatchMenu(e, "data[" + atmDataModel.getValueAt(row, 0) + "]");
+            }
+        });
+        debugWindow.getDataSymbolTable().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                super.mouseReleased(e);
+                int row = debugWindow.getDataSymbolTable().rowAtPoint(e.getPoint());
+                if (SwingUtilities.isRightMouseButton(e) && row >= 0)
+                    showWatchMenu(e, "sym" + atmDataSymbolModel.getValueAt(row, 0));
+            }
+        });
+    }
+
+    private void showWatchMenu(MouseEvent e, final String location) {
+        JPopupMenu menu = new JPopupMenu();
+        String[] items = { "Watch Writes", "Watch Reads and Writes", "Log Writes", "Log Reads and Writes" };
+        for (int i = 0; i < items.length; i++) {
+            final boolean reads = (i % 2) == 1, halt = i < 2;
+            JMenuItem item = new JMenuItem(items[i] + " of " + location);
+            item.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent arg0) {
+                    updateOutput(interp.setWatchpoint(location, reads, halt));
+                    updateTables();
+                }
+            });
+            menu.add(item);
+        }
+
+        if (interp.getWatchpoint(location) != null) {
+            JMenuItem item = new JMenuItem("Remove Watchpoint on " + location);
+            item.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent arg0) {
+                    updateOutput(interp.removeWatchpoint(location));
+                    updateTables();
+                }
+            });
+            menu.add(item);
+        }
+
+        menu.show(e.getComponent(), e.getX(), e.getY());
+    }
+
+    private void showProgramMenu(MouseEvent e, final int row) {
+        if (row < 0)
+            return;
+
+        JPopupMenu menu = new JPopupMenu();
+        JMenuItem item = new JMenuItem("Conditional Breakpoint on Row " + row + "...");
+        item.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent arg0) {
+                editBreakpoint(row);
+            }
+        });
+        menu.add(item);
+
+        item = new JMenuItem("Logpoint on Row " + row + "...");
+        item.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent arg0) {
+                editLogpoint(row);
+            }
+        });
+        menu.add(item);
+
+        if (interp.logpointSetOnRow(row)) {
+            item = new JMenuItem("Remove Logpoint on Row " + row);
+            item.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent arg0) {
+                    updateOutput(interp.removeLogpoint(row));
+                    atmProgramModel.fireTableDataChanged();
+                }
+            });
+            menu.add(item);
+        }
+
+        menu.show(e.getComponent(), e.getX(), e.getY());
+    }
+
+    private void editLogpoint(int row) {
+        Logpoint logpoint = interp.getLogpoint(row);
+        String expression = (String) JOptionPane.showInputDialog(null,
+                "Each time the program reaches row " + row + ", log these data locations without halting\n" +
+                        "(e.g. \"data[4], data[10..12]\", or \"sym14, sym15[2]\" in label mode):",
+                "Logpoint", JOptionPane.PLAIN_MESSAGE, null, null, (logpoint == null) ? "" : logpoint.getExpression());
+        if (expression == null)
+            return; // cancelled
+
+        updateOutput(interp.setLogpoint(row, expression));
+        atmProgramModel.fireTableDataChanged();
+    }
+
+    private void editBreakpoint(int row) {
+        if (row < 0)
+            return;
+
+        Breakpoint breakpoint = interp.getBreakpoint(row);
+        String current = "";
+        if (breakpoint != null) {
+            current = (breakpoint.getCondition() != null) ? "if " + breakpoint.getCondition() : "";
+            current += (breakpoint.getHitCount() > 0) ? ((current.isEmpty()) ? "" : " ") + "hit " + breakpoint.getHitCount() : "";
+        }
+
+        String spec = (String) JOptionPane.showInputDialog(null,
+                "Break on row " + row + " (e.g. \"if data[5] >= 100\", \"hit 10000\" or both,\n" +
+                        "symN[offset] reads a data symbol in label mode, leave empty to break every time):",
+                "Conditional Breakpoint", JOptionPane.PLAIN_MESSAGE, null, null, current);
+        if (spec == null)
+            return; // cancelled
+
+        updateOutput(interp.setBreakpoint(row + " " + spec.trim()));
+        atmProgramModel.fireTableDataChanged();
+    }
+
+    private void setListeners() {
+        interp.setStepListener(new StepListener() {
+            @Override
+            public void stepExecuted(StepEvent event) {
+                if (debugOutput)
+                    updateOutput(event.getLine() + ":\t" + Interpreter.getResultOutput(event));
+            }
+        });
+        interp.setWatchListener(new WatchListener() {
+            @Override
+            public void watchpointHit(Watchpoint watchpoint, int line, int address, boolean write, long value) {
+                updateOutput(watchpoint.describeHit(line, address, write, value));
+            }
+        });
+        interp.setLogListener(new LogListener() {
+            @Override
+            public void logged(String message) {
+                pendingLogs.add(message); // shown by showLogs on the event thread, in order
+            }
+        });
+        interp.setOutputListener(new OutputListener() {
+            @Override
+            public void valuePrinted(long value) {
+                appendString(sbPrint, Long.toString(value)); // preserve result of print statement for later
+            }
+        });
     }
 
     private void resetProgram() {
         resetExecution();
-        StringBuilder loadResult = new StringBuilder();
+        StringBuilder loadResult = new StringBuilder(loadReport);
         try {
-            interp.parseProgram(loadResult);
+            interp.reset(); // restores the loaded memory image, the cards aren't parsed again
         } catch (Exception e) {
             appendString(loadResult, e.getMessage());
         } finally {
@@ -491,30 +656,35 @@ public class DebuggerGUI {
     }
 
     private void runProgram(boolean step, boolean debug) {
-        ResultData resultData;
+        debugOutput = debug;
 
         try {
-            while (!interp.programComplete()) {
-                resultData = interp.runNextInstruction();
-
-                if (debug) {
-                    String debugString = Interpreter.getResultOutput(resultData);
-                    updateOutput(interp.getLastInstructionPointer() + ":\t" + debugString);
+            if (!step && !debug) { // plain run doesn't need per-step bookkeeping
+                boolean completed;
+                try {
+                    completed = interp.runToCompletion();
+                } finally {
+                    showLogs();
                 }
 
-                Instruction inst = resultData.getInstruction();
-                if (!inst.getPositive() && inst.getOp() == 8) {
-                    // preserve result of print statement for later
-                    appendString(sbPrint, Long.toString(resultData.getResult()[0]));
-                }
+                if (!completed)
+                    updateOutput(interp.getHaltMessage());
+            } else {
+                while (!interp.programComplete()) {
+                    try {
+                        interp.runNextInstruction();
+                    } finally {
+                        showLogs();
+                    }
 
-                if (interp.breakpointSetOnInstructionPointer()) {
-                    step = true; // force a break
-                    updateOutput("Breakpoint triggered on row " + interp.getInstructionPointer());
-                }
+                    if (interp.breakpointTriggered() | interp.getTriggeredWatchpoint() != null | interp.getExhaustedBudget() != null) { // count the arrival either way
+                        step = true; // force a break
+                        updateOutput(interp.getHaltMessage());
+                    }
 
-                if (step)
-                    break;
+                    if (step)
+                        break;
+                }
             }
 
             if (interp.programComplete() && sbPrint.length() > 0) { // full print to console
@@ -526,7 +696,7 @@ public class DebuggerGUI {
                 updateOutput(sbPrint);
             }
 
-            updateTables();
+            updateChangedTables();
             autoScrollTables();
             setRunActionsEnabled(!interp.programComplete()); // prevent running or stepping when program is complete
         } catch (Exception e) {
@@ -537,6 +707,12 @@ public class DebuggerGUI {
         }
     }
 
+    private void showLogs() {
+        interp.flushLogs();
+        for (String message = pendingLogs.poll(); message != null; message = pendingLogs.poll())
+            updateOutput(message);
+    }
+
     private void autoScrollTables() {
         Rectangle cellRect;
         JTable table;
@@ -544,16 +720,7 @@ public class DebuggerGUI {
         if (interp.getLastWrittenDataLocation() != -1) {
             table = debugWindow.getDataTable();
 
-            int i = 0;
-            for (int x : interp.getUsedDataLocations())
-            {
-                if (x == interp.getLastWrittenDataLocation())
-                    break;
-
-                i++;
-            }
-
-            cellRect = table.getCellRect(i, 0, true);
+            cellRect = table.getCellRect(interp.getWrittenLocations().rank(interp.getLastWrittenDataLocation()), 0, true);
             table.scrollRectToVisible(cellRect);
         }
 
@@ -599,35 +766,60 @@ public class DebuggerGUI {
 
             cellRect = table.getCellRect(x, 0, true);
             table.scrollRectToVisible(cellRect);
-        } else {
-            for (int symbol : interp.getLastReadDataSymbolSet()) {
-                table = debugWindow.getDataSymbolTable();
-                Integer[] indexArray = interp.getDataSymbolMap().keySet().toArray(new Integer[interp.getDataSymbolMapSize()]);
-                int x = -1;
-
-                for (int i = 0; i < indexArray.length; i++) {
-                    if (indexArray[i] == symbol) {
-                        x = i;
-                        break;
-                    }
-                }
+        } else if (interp.getLastReadDataSymbol() != -1) { // just do the first one
+            table = debugWindow.getDataSymbolTable();
+            Integer[] indexArray = interp.getDataSymbolMap().keySet().toArray(new Integer[interp.getDataSymbolMapSize()]);
+            int x = -1;
 
-                cellRect = table.getCellRect(x, 0, true);
-                table.scrollRectToVisible(cellRect);
-                break; // just do the first one
+            for (int i = 0; i < indexArray.length; i++) {
+                if (indexArray[i] == interp.getLastReadDataSymbol()) {
+                    x = i;
+                    break;
+                }
             }
+
+            cellRect = table.getCellRect(x, 0, true);
+            table.scrollRectToVisible(cellRect);
         }
     }
 
     // Helper Methods
     private void updateTables() {
-        atmDataModel.fireTableDataChanged();
+        updateDataTable();
+        updateOtherTables();
+    }
+
+    private void updateOtherTables() {
         atmProgramModel.fireTableDataChanged();
         atmInputModel.fireTableDataChanged();
         atmProgramLabelModel.fireTableDataChanged();
         atmDataSymbolModel.fireTableDataChanged();
     }
 
+    private void updateChangedTables() { // after running, when a step only wrote a cell or two, only their rows are repainted
+        MemoryBits written = interp.getWrittenLocations(), changed = interp.getChangedLocations();
+        if (written.cardinality() != dataRowsShown || changed.cardinality() > MAX_CHANGED_ROWS)
+            updateDataTable();
+        else {
+            for (int address = changed.nextSetBit(0); address != -1; address = changed.nextSetBit(address + 1))
+                atmDataModel.fireTableRowsUpdated(written.rank(address), written.rank(address));
+            if (dataLocationHighlighted != -1 && written.get(dataLocationHighlighted)) // no longer the last written location
+                atmDataModel.fireTableRowsUpdated(written.rank(dataLocationHighlighted), written.rank(dataLocationHighlighted));
+
+            interp.clearChangedLocations();
+            dataLocationHighlighted = interp.getLastWrittenDataLocation();
+        }
+
+        updateOtherTables();
+    }
+
+    private void updateDataTable() {
+        atmDataModel.fireTableDataChanged();
+        dataRowsShown = interp.getWrittenLocations().cardinality();
+        interp.clearChangedLocations();
+        dataLocationHighlighted = interp.getLastWrittenDataLocation();
+    }
+
     private void updateOutput(String s) {
         appendString(sbOutput, s);
         Document doc = debugWindow.getOutputPane().getDocument();
@@ -722,21 +914,33 @@ public class DebuggerGUI {
     //// Custom Table Cell Renderers ////
     public class DataTableRenderer extends DefaultTableCellRenderer {
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
-            if (Integer.parseInt(atmDataModel.getValueAt(row, 0).toString()) == interp.getLastWrittenDataLocation())
+            int address = interp.getWrittenLocations().select(row);
+            if (address == interp.getLastWrittenDataLocation())
                 setForeground(Color.red);
             else
                 setForeground(Color.black);
 
+            setBackground(interp.isWatched(address) ? Color.yellow : Color.white);
+
             return super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
         }
     }
 
     public class ProgramTableRenderer extends DefaultTableCellRenderer {
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
-            if (interp.breakpointSetOnRow(row))
-                this.setBackground(Color.pink);
+            Breakpoint breakpoint = interp.getBreakpoint(row);
+            Logpoint logpoint = interp.getLogpoint(row);
+            if (breakpoint == null)
+                this.setBackground((logpoint == null) ? Color.white : Color.cyan);
+            else if (breakpoint.isConditional())
+                this.setBackground(Color.orange);
             else
-                this.setBackground(Color.white);
+                this.setBackground(Color.pink);
+
+            String tip = (breakpoint != null && breakpoint.isConditional()) ? "Breaks on " + breakpoint : null;
+            if (logpoint != null)
+                tip = ((tip == null) ? "" : tip + "; ") + "Logs " + logpoint.getExpression();
+            setToolTipText(tip);
 
             if (Integer.parseInt(atmProgramModel.getValueAt(row, 0).toString()) == interp.getInstructionPointer())
                 table.setForeground(Color.blue);
@@ -763,15 +967,18 @@ public class DebuggerGUI {
     public class DataSymbolTableRenderer extends DefaultTableCellRenderer {
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
             Integer[] symbolArray = interp.getDataSymbolMap().keySet().toArray(new Integer[interp.getDataSymbolMapSize()]);
-            if (interp.getLastWrittenDataSymbol() == symbolArray[row] && interp.getLastReadDataSymbolSet().contains(symbolArray[row]))
+            if (interp.getLastWrittenDataSymbol() == symbolArray[row] && interp.isLastReadDataSymbol(symbolArray[row]))
                 setForeground(Color.magenta);
             else if (interp.getLastWrittenDataSymbol() == symbolArray[row])
                 setForeground(Color.red);
-            else if (interp.getLastReadDataSymbolSet().contains(symbolArray[row]))
+            else if (interp.isLastReadDataSymbol(symbolArray[row]))
                 setForeground(Color.blue);
             else
                 setForeground(Color.black);
 
+            int symbol = symbolArray[row];
+            setBackground(interp.isWatched(interp.getDataSymbolMap().get(symbol), interp.getDataSymbolSize(symbol)) ? Color.yellow : Color.white);
+
             return super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
         }
     }
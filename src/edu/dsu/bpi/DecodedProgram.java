@@ -0,0 +1,82 @@
+package edu.dsu.bpi;
+
+import java.util.Arrays;
+
+public final class DecodedProgram {
+    final int[] opcodes;
+    final int[] opn1, opn2, opn3;
+    final int[] addr1, addr2, addr3; // absolute data addresses (array base for +6/-6), resolved by the link phase
+    final int[] target; // absolute program line of a branch
+    final int[] bound; // word count of the array symbol used by +6/-6 (unbounded in raw mode)
+    final int[] fused; // superinstruction starting at a line, NONE if the line runs on its own
+    final int[] verified; // ProgramVerifier guarantees for each line
+
+    public DecodedProgram(int capacity) {
+        opcodes = new int[capacity];
+        opn1 = new int[capacity];
+        opn2 = new int[capacity];
+        opn3 = new int[capacity];
+        addr1 = new int[capacity];
+        addr2 = new int[capacity];
+        addr3 = new int[capacity];
+        target = new int[capacity];
+        bound = new int[capacity];
+        fused = new int[capacity];
+        verified = new int[capacity];
+
+        Arrays.fill(opcodes, Opcode.NONE);
+        Arrays.fill(fused, Opcode.NONE);
+    }
+
+    public int getCapacity() { return opcodes.length; }
+
+    public int getOpcode(int line) { return (line >= 0 && line < opcodes.length) ? opcodes[line] : Opcode.NONE; }
+    public int getOpn1(int line) { return opn1[line]; }
+    public int getOpn2(int line) { return opn2[line]; }
+    public int getOpn3(int line) { return opn3[line]; }
+    public int getAddress1(int line) { return addr1[line]; }
+    public int getAddress2(int line) { return addr2[line]; }
+    public int getAddress3(int line) { return addr3[line]; }
+    public int getTarget(int line) { return target[line]; }
+    public int getBound(int line) { return bound[line]; }
+    public int getSuperinstruction(int line) { return (line >= 0 && line < fused.length) ? fused[line] : Opcode.NONE; }
+    public int getVerified(int line) { return verified[line]; }
+    public boolean isSafe(int line) { return (verified[line] & ProgramVerifier.SAFE) == ProgramVerifier.SAFE; }
+    public boolean isInitializedRead(int line, int operand) { return (verified[line] & ProgramVerifier.initialized(operand)) != 0; }
+
+    public void setCard(int line, char[] card) { // card must already be validated by the loader
+        setCard(line, card[0] == '+', card[1] - '0', decodeOperand(card, 2), decodeOperand(card, 5), decodeOperand(card, 8));
+    }
+
+    void setCard(int line, boolean positive, int op, int a, int b, int c) { // op 0 to 9, operands 0 to 999
+        opcodes[line] = Opcode.encode(positive, op, a, b, c);
+        opn1[line] = a;
+        opn2[line] = b;
+        opn3[line] = c;
+
+        // raw addressing until the program is linked
+        addr1[line] = a;
+        addr2[line] = b;
+        addr3[line] = c;
+        target[line] = c;
+        bound[line] = Integer.MAX_VALUE;
+    }
+
+    public void fuseSuperinstructions(int size) { // only verified lines are fused
+        // the fused pair's original lines stay intact, so a branch into the second line still runs it on its own
+        for (int i = 0; i + 1 < size; i++)
+            fused[i] = (isSafe(i) && isSafe(i + 1)) ? Opcode.fuse(opcodes[i], opcodes[i + 1]) : Opcode.NONE;
+    }
+
+    public Instruction getInstruction(int line) {
+        int opcode = getOpcode(line);
+        if (opcode == Opcode.NONE)
+            return null;
+
+        return new Instruction(Opcode.isPositive(opcode), Opcode.getOp(opcode), opn1[line], opn2[line], opn3[line]);
+    }
+
+    private static int decodeOperand(char[] card, int start) {
+        return (card[start] - '0') * 100 + (card[start + 1] - '0') * 10 + (card[start + 2] - '0');
+    }
+}
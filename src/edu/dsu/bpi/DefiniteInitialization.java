@@ -0,0 +1,157 @@
+package edu.dsu.bpi;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dataflow analysis over the program's control flow that finds which data locations are initialized
+ * when each line runs. Memory never becomes uninitialized again, so a location is definitely
+ * initialized at a line if every path from line 0 writes (or successfully reads) it first, and it
+ * can't be initialized if no path does. Direct reads of the first kind are marked in the verifier
+ * flags; reads of the second kind are reported because the line faults whenever it runs.
+ */
+final class DefiniteInitialization {
+    private final DecodedProgram program;
+    private final int programSize, memorySize, words;
+    private final long[][] mustIn, mayIn; // locations initialized on every / some path into each line, null if unreachable
+    private final boolean[] offsetInRange; // from ValueRanges, null if it couldn't prove anything
+
+    private DefiniteInitialization(DecodedProgram program, int programSize, int memorySize, boolean[] offsetInRange) {
+        this.program = program;
+        this.offsetInRange = offsetInRange;
+        this.programSize = programSize;
+        this.memorySize = memorySize;
+        words = (memorySize + 63) / 64;
+        mustIn = new long[programSize][];
+        mayIn = new long[programSize][];
+    }
+
+    static void analyze(DecodedProgram program, int programSize, long[] data, boolean[] offsetInRange,
+                        Map<Integer, Integer> programLineMap, String fileName, List<String> warnings) {
+        DefiniteInitialization analysis = new DefiniteInitialization(program, programSize, data.length, offsetInRange);
+
+        long[] loaded = new long[analysis.words];
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] != Long.MIN_VALUE)
+                set(loaded, i);
+        }
+
+        analysis.solve(loaded);
+        analysis.record(programLineMap, fileName, warnings);
+    }
+
+    private void solve(long[] loaded) {
+        Deque<Integer> worklist = new ArrayDeque<>();
+        mustIn[0] = loaded.clone();
+        mayIn[0] = loaded.clone();
+        worklist.add(0);
+
+        while (!worklist.isEmpty()) {
+            int line = worklist.poll();
+            long[] mustOut = mustIn[line].clone(), mayOut = mayIn[line].clone();
+            transfer(line, mustOut, mayOut);
+
+            int opcode = program.opcodes[line];
+            if (Opcode.fallsThrough(opcode, line) && line + 1 < programSize && merge(line + 1, mustOut, mayOut))
+                worklist.add(line + 1);
+
+            if (Opcode.isBranch(opcode)) {
+                int target = program.target[line];
+                if (target >= 0 && target < programSize && merge(target, mustOut, mayOut))
+                    worklist.add(target);
+            }
+        }
+    }
+
+    private void transfer(int line, long[] must, long[] may) {
+        int opcode = program.opcodes[line];
+
+        // a line only continues if its reads succeeded, so they're initialized afterwards as well
+        for (int operand = 1; operand <= 3; operand++) {
+            if (Opcode.readsOperand(opcode, operand))
+                set(must, address(line, operand));
+        }
+
+        int written = Opcode.getWrittenOperand(opcode);
+        if (written != 0) {
+            set(must, address(line, written));
+            set(may, address(line, written));
+        }
+
+        if (opcode == Opcode.TO_ARRAY) { // computed index, up to the end of the symbol in label mode (of memory in raw mode)
+            // from the base only if the offset can't be negative, labels don't bound it from below
+            int base = program.addr2[line], bound = program.bound[line];
+            int start = (offsetInRange != null && offsetInRange[line]) ? base : 0;
+            int end = (bound == Integer.MAX_VALUE) ? memorySize : Math.min(memorySize, base + bound);
+            for (int i = Math.max(0, start); i < end; i++)
+                set(may, i);
+        }
+    }
+
+    private boolean merge(int line, long[] must, long[] may) { // returns true if the line's entry state changed
+        if (mustIn[line] == null) {
+            mustIn[line] = must.clone();
+            mayIn[line] = may.clone();
+            return true;
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < words; i++) {
+            long mustWord = mustIn[line][i] & must[i], mayWord = mayIn[line][i] | may[i];
+            if (mustWord != mustIn[line][i] || mayWord != mayIn[line][i]) {
+                mustIn[line][i] = mustWord;
+                mayIn[line][i] = mayWord;
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private void record(Map<Integer, Integer> programLineMap, String fileName, List<String> warnings) {
+        for (int line = 0; line < programSize; line++) {
+            if (mustIn[line] == null)
+                continue; // never runs
+
+            int opcode = program.opcodes[line];
+            long[] must = mustIn[line].clone(); // a read proves the location for the reads after it on the same line
+            for (int operand = 1; operand <= 3; operand++) {
+                if (!Opcode.readsOperand(opcode, operand))
+                    continue;
+
+                int address = address(line, operand);
+                if (address < 0 || address >= memorySize)
+                    continue; // reported by the verifier
+
+                if (get(must, address))
+                    program.verified[line] |= ProgramVerifier.initialized(operand);
+                else if (!get(mayIn[line], address)) {
+                    warnings.add("Uninitialized memory location " + address + " is read, which will halt the program if it runs"
+                            + " (line " + programLineMap.get(line) + " of " + fileName + ")");
+                    break; // the first failing read ends the line
+                }
+
+                set(must, address);
+            }
+        }
+    }
+
+    private int address(int line, int operand) {
+        switch (operand) {
+            case 1: return program.addr1[line];
+            case 2: return program.addr2[line];
+            default: return program.addr3[line];
+        }
+    }
+
+    private static void set(long[] bits, int index) {
+        if (index >= 0 && index < bits.length * 64)
+            bits[index >> 6] |= 1L << index;
+    }
+
+    private static boolean get(long[] bits, int index) {
+        return (bits[index >> 6] & (1L << index)) != 0;
+    }
+}
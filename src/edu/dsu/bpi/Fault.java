@@ -0,0 +1,40 @@
+package edu.dsu.bpi;
+
+import java.math.BigInteger;
+
+/**
+ * Runtime faults that halt a program, with the meaning of the two details a ProgramFault carries.
+ */
+public enum Fault {
+    UNINITIALIZED_READ, // address
+    READ_OUT_OF_RANGE, // address, highest address
+    WRITE_OUT_OF_RANGE, // address, highest address
+    OFFSET_OUT_OF_BOUNDS, // offset, data symbol
+    OVERFLOW, // result as detail1 * detail2 (detail2 is 1 unless the exact product doesn't fit in a long)
+    UNDERFLOW, // same as OVERFLOW
+    DIVIDE_BY_ZERO, // dividend
+    INPUT_EXHAUSTED, // input card index
+    UNSUPPORTED_OPERATION, // card digit of the -0, -7 or -9 operation
+    MISSING_LINE, // program line without a card
+    INFINITE_LOOP; // program line of the backward branch that brought the program back to a state it was in before
+
+    public String format(long detail1, long detail2) { // the fault's message, without the program line
+        switch (this) {
+            case UNINITIALIZED_READ: return "Attempted to access uninitialized memory location " + detail1;
+            case READ_OUT_OF_RANGE: return "Data index " + detail1 + " exceeds memory range of " + detail2;
+            case WRITE_OUT_OF_RANGE: return "Data index " + detail1 + " exceeds maximum memory range of " + detail2;
+            case OFFSET_OUT_OF_BOUNDS: return "Offset " + detail1 + " is out of bounds for data symbol " + detail2;
+            case OVERFLOW: return "Program memory overflow: the result (" + product(detail1, detail2) + ") exceeds the maximum value of 9999999999";
+            case UNDERFLOW: return "Program memory underflow: the result (" + product(detail1, detail2) + ") exceeds the minimum value of -9999999999";
+            case DIVIDE_BY_ZERO: return "/ by zero";
+            case INPUT_EXHAUSTED: return "Attempted to read beyond bounds of input cards";
+            case UNSUPPORTED_OPERATION: return "Called unsupported operation -" + detail1;
+            case INFINITE_LOOP: return "Program is in an infinite loop at line " + detail1;
+            default: return "Program line " + detail1 + " has not been set. Missing end card?";
+        }
+    }
+
+    private static String product(long a, long b) {
+        return (b == 1) ? Long.toString(a) : BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).toString();
+    }
+}
@@ -1,33 +1,114 @@
 package edu.dsu.bpi;
 
+import edu.dsu.bpi.ir.ControlFlowGraph;
+
 import java.io.*;
+import java.nio.channels.Channels;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Interpreter {
-    private static int MAX_MEM = 1000;
+    // a faster tier pauses after this many backward branches so the interpreter can sample the next DETECTION_WINDOW,
+    // both double after every window (up to MAX_DETECTION_SCALE) so longer cycles are found without costing more
+    private static final int DETECTION_SLICE = 1 << 18, DETECTION_WINDOW = 64, MAX_DETECTION_SCALE = 7;
+    private static final int MONITOR_INTERVAL = 1 << 16; // backward branches between snapshots while the interpreter runs
+    private static final Pattern BREAKPOINT_PATTERN = Pattern.compile("\\s*(-?\\d+)(?:\\s+if\\s+(.+?))?(?:\\s+hit\\s+(\\d+))?\\s*", Pattern.CASE_INSENSITIVE);
 
+    private final MachineProfile profile;
     private List<String> inputInstructionList;
-    private long[] _data;
-    private char[][] _program;
+    private long[] _data; // the directly addressable words
+    private final PagedMemory highMemory; // the rest of a large profile's memory, null if there isn't any
+    private DecodedProgram program;
+    private LoadedImage loadedImage; // state right after the program was loaded, null until one loads
     private long[] _input;
-    private TreeSet<Integer> usedDataLocations;
+    private boolean inputShared; // a fork also uses _input, so it's copied before either side changes a card
+    private MemoryBits writtenLocations; // every location that has held a value, the debugger's data table rows
+    private MemoryBits changedLocations; // locations written since the debugger last cleared them
+    private boolean writtenStale; // brought up to date on request after a run without bookkeeping
     private TreeMap<Integer, Integer> programLabelMap;
     private TreeMap<Integer, Integer> dataSymbolMap;
     private TreeMap<Integer, Integer> dataSymbolSizeMap;
     private TreeMap<Integer, Integer> programLineMap;
-    private HashSet<Integer> lastReadDataSymbolSet;
-    private HashSet<Integer> breakpointSet;
+    private int[] fileLines; // programLineMap as an array for fault messages, a new one for each load
+    private int[] dataSymbolAt; // data symbol that owns each absolute address (label/symbol mode)
+    private int[] lastReadDataSymbols; // distinct symbols read by the last instruction
+    private int lastReadDataSymbolCount;
+    private Breakpoint[] breakpoints; // by program line, null where there isn't one
+    private int breakpointCount; // execution only looks at breakpoints while this isn't 0
+    private List<Watchpoint> watchpoints;
+    private long[] readWatched, writeWatched; // one bit per data location covered by a watchpoint
+    private boolean watching; // data accesses only probe the bitmaps while a watchpoint is set
+    private Watchpoint triggeredWatchpoint; // halting watchpoint hit by the last step or run
+    private WatchListener watchListener;
+    private Logpoint[] logpoints; // by program line, like breakpoints
+    private int logpointCount;
+    private LogListener logListener;
+    private ExecutorService logFormatter; // started on the first log, formats messages off the execution thread
 
     private String fileName = null;
 
+    private StepEvent event;
+    private StepListener stepListener;
+    private OutputListener outputListener;
+    private boolean tracking = true; // debugger bookkeeping (last read/written locations, used data locations)
+    private boolean fusionEnabled = true; // superinstructions are only ever used by runToCompletion
+    private boolean loopIdiomsEnabled = true; // run recognized copy/fill/sum/max/min loops in bulk
+    private LoopIdioms loopIdioms;
+    private List<String> loadWarnings = Collections.emptyList(); // from the verifier, for callers that don't pass a report
+    private ControlFlowGraph controlFlowGraph; // built on first use for each loaded program
+    private boolean closureEnabled = true; // promote warm programs to pre-bound instruction nodes
+    private int closureThreshold = 10; // times one backward branch is taken before the program moves to the closure tier
+    private boolean compilationEnabled = true; // promote hot programs to generated JVM bytecode
+    private int compileThreshold = 1000; // times one backward branch is taken before the program is compiled
+    private int[] backwardBranchCounts; // hotness counter for each branching line
+    private ClosureProgram closureProgram;
+    private CompiledProgram compiledProgram;
+    private boolean compilationFailed;
+    private TierReport tierReport;
+    private boolean loopDetectionEnabled = true; // fault when the program provably repeats a state
+    private LoopDetector loopDetector;
+    private boolean sliceEnded; // the last faster tier run paused so the interpreter could sample the state
+    private int detectionScale; // windows sampled so far in this run, up to MAX_DETECTION_SCALE
+    // execution budgets, 0 for no limit, checked at backward branches and started over after stopping a run
+    private long instructionLimit, timeLimit, outputLimit; // timeLimit in milliseconds
+    private boolean budgeted; // any of them is set
+    private long instructionBase, printBase; // tier report total and printCount when the budgets started
+    private long printCount; // values printed since the program was loaded or reset
+    private long runNanos; // running time used from the time budget, not counting time between steps
+    private long runStarted; // System.nanoTime() when the current step or run started
+    private int clockCountdown; // backward branches until the interpreter reads the clock again
+    private Budget exhaustedBudget; // budget that stopped the last step or run
+    private StateMonitor monitor; // publishes the state to a memory-mapped file, null if nothing is watching
+    private int monitorCountdown; // backward branches until the interpreter publishes again
+
     private int instructionPointer, lastInstructionPointer, inputPointer, dataSymbolPointer;
     private int programSize, inputSize;
     private int lastWrittenDataLocation, lastReadInputCard, lastReadProgramLabel, lastWrittenDataSymbol;
     private boolean labelsEnabled;
+    private boolean checkDirectAddresses; // the verifier couldn't prove every direct operand is inside memory
+
+    public MemoryBits getWrittenLocations() { updateWrittenLocations(); return writtenLocations; }
+    public MemoryBits getChangedLocations() { updateWrittenLocations(); return changedLocations; }
+    public void clearChangedLocations() { changedLocations.clear(); }
 
-    public TreeSet<Integer> getUsedDataLocations() { return usedDataLocations;}
+    private void updateWrittenLocations() {
+        if (writtenStale) { // every initialized location has been written at some point
+            for (int i = 0; i < _data.length; i++) {
+                if (_data[i] != Long.MIN_VALUE)
+                    writtenLocations.set(i);
+            }
+            for (int i = (highMemory == null) ? -1 : highMemory.nextInitialized(_data.length); i != -1; i = highMemory.nextInitialized(i + 1))
+                writtenLocations.set(i);
+
+            changedLocations.or(writtenLocations); // no telling which of them the run wrote
+            writtenStale = false;
+        }
+    }
     public TreeMap<Integer, Integer> getProgramLabelMap() { return programLabelMap; }
     public TreeMap<Integer, Integer> getDataSymbolMap() { return dataSymbolMap; }
 
@@ -44,13 +125,105 @@ public class Interpreter {
     public int getLastReadInputCard() { return lastReadInputCard; }
     public int getLastReadProgramLabel() { return lastReadProgramLabel; }
     public int getLastWrittenDataSymbol() { return lastWrittenDataSymbol; }
-    public HashSet<Integer> getLastReadDataSymbolSet() { return lastReadDataSymbolSet; }
-    public boolean breakpointSetOnRow(int row) { return breakpointSet.contains(row); }
-    public boolean breakpointSetOnInstructionPointer() {return breakpointSet.contains(instructionPointer);}
+    public int getLastReadDataSymbol() { return (lastReadDataSymbolCount > 0) ? lastReadDataSymbols[0] : -1; }
+    public boolean isLastReadDataSymbol(int symbol) {
+        for (int i = 0; i < lastReadDataSymbolCount; i++) {
+            if (lastReadDataSymbols[i] == symbol)
+                return true;
+        }
+
+        return false;
+    }
+    public boolean breakpointSetOnRow(int row) { return row >= 0 && row < breakpoints.length && breakpoints[row] != null; }
+    public boolean breakpointSetOnInstructionPointer() { return breakpointSetOnRow(instructionPointer); }
+    public Breakpoint getBreakpoint(int row) { return breakpointSetOnRow(row) ? breakpoints[row] : null; }
+    public int getBreakpointCount() { return breakpointCount; }
+
+    public Watchpoint getTriggeredWatchpoint() { return triggeredWatchpoint; }
+    public List<Watchpoint> getWatchpoints() { return Collections.unmodifiableList(watchpoints); }
+    public List<String> getLoadWarnings() { return Collections.unmodifiableList(loadWarnings); }
+    public boolean isWatched(int address) { return watching && address >= 0 && address < profile.getMemoryWords() && (writeWatched[address >>> 6] & 1L << address) != 0; }
+    public boolean isWatched(int first, int count) {
+        for (int address = first; address < first + count; address++) {
+            if (isWatched(address))
+                return true;
+        }
+
+        return false;
+    }
+
+    public String getHaltMessage() { // why the last step or run stopped before the program ended
+        if (exhaustedBudget != null)
+            return exhaustedBudget.describe(getLimit(exhaustedBudget)) + " used up on row " + lastInstructionPointer + ", run again to continue from row " + instructionPointer;
+        if (triggeredWatchpoint != null)
+            return "Watchpoint on " + triggeredWatchpoint.getLocation() + " triggered on row " + lastInstructionPointer + ", halted before row " + instructionPointer;
+
+        return "Breakpoint triggered on row " + instructionPointer;
+    }
+
+    public boolean breakpointTriggered() { // counts an arrival at the breakpoint on the instruction pointer, if there is one
+        Breakpoint breakpoint = getBreakpoint(instructionPointer); // null past the program capacity, where a branch can still go
+        return breakpoint != null && breakpoint.trigger(_data);
+    }
 
     public boolean getLabelsEnabled() { return labelsEnabled; }
 
-    public long accessData(int index) { return _data[index]; }
+    public void setStepListener(StepListener listener) { stepListener = listener; }
+    public void setOutputListener(OutputListener listener) { outputListener = listener; }
+    public void setWatchListener(WatchListener listener) { watchListener = listener; }
+    public void setLogListener(LogListener listener) { logListener = listener; }
+    public void setFusionEnabled(boolean enabled) { fusionEnabled = enabled; }
+    public boolean getFusionEnabled() { return fusionEnabled; }
+    public void setLoopIdiomsEnabled(boolean enabled) { loopIdiomsEnabled = enabled; }
+    public boolean getLoopIdiomsEnabled() { return loopIdiomsEnabled; }
+    public void setClosureEnabled(boolean enabled) { closureEnabled = enabled; }
+    public boolean getClosureEnabled() { return closureEnabled; }
+    public void setClosureThreshold(int threshold) { closureThreshold = threshold; } // 0 moves to the closure tier before running
+    public int getClosureThreshold() { return closureThreshold; }
+    public void setCompilationEnabled(boolean enabled) { compilationEnabled = enabled; }
+    public boolean getCompilationEnabled() { return compilationEnabled; }
+    public void setCompileThreshold(int threshold) { compileThreshold = threshold; } // 0 compiles before running
+    public int getCompileThreshold() { return compileThreshold; }
+    public TierReport getTierReport() { return tierReport; }
+    public void setLoopDetectionEnabled(boolean enabled) {
+        loopDetectionEnabled = enabled;
+        loopDetector.invalidate(); // writes aren't tracked while it's off
+        loopDetector.restart();
+    }
+    public boolean getLoopDetectionEnabled() { return loopDetectionEnabled; }
+    public void setInstructionLimit(long limit) { instructionLimit = limit; updateBudgets(); }
+    public void setTimeLimit(long milliseconds) { timeLimit = milliseconds; updateBudgets(); }
+    public void setOutputLimit(long lines) { outputLimit = lines; updateBudgets(); }
+    public long getLimit(Budget budget) {
+        switch (budget) {
+            case INSTRUCTIONS: return instructionLimit;
+            case TIME: return timeLimit;
+            default: return outputLimit;
+        }
+    }
+    public Budget getExhaustedBudget() { return exhaustedBudget; }
+    public void setMonitorFile(File file) throws IOException { // null stops publishing, see StateMonitorReader for the layout
+        if (monitor != null)
+            monitor.close();
+
+        monitor = null;
+        if (file != null) {
+            monitor = new StateMonitor(file, _data.length, profile.getInputCapacity());
+            monitor.publishInput(_input, inputSize);
+            publish(programComplete() ? StateMonitorReader.HALTED : StateMonitorReader.LOADED, 0);
+        }
+    }
+    public DecodedProgram getDecodedProgram() { return program; }
+
+    public ControlFlowGraph getControlFlowGraph() { // null until a program is loaded
+        if (controlFlowGraph == null && programSize > 0)
+            controlFlowGraph = ControlFlowGraph.build(program, programSize);
+
+        return controlFlowGraph;
+    }
+
+    public long accessData(int index) { return (index < _data.length) ? _data[index] : highMemory.get(index); }
+    public MachineProfile getProfile() { return profile; }
     public long accessInput(int index) {
         return _input[index];
     }
@@ -58,50 +231,434 @@ public class Interpreter {
     private enum LoadState { DATA, PROGRAM, INPUT };
 
     public Interpreter() {
-        _data = new long[MAX_MEM];
-        _program = new char[MAX_MEM][];
-        _input = new long[MAX_MEM];
-        usedDataLocations = new TreeSet<>();
+        this(MachineProfile.CLASSIC);
+    }
+
+    public Interpreter(MachineProfile profile) {
+        this.profile = profile;
+        _data = new long[profile.getDirectWords()];
+        highMemory = (profile.isPaged()) ? new PagedMemory(_data.length, profile.getMemoryWords()) : null;
+        program = new DecodedProgram(profile.getProgramCapacity());
+        _input = new long[profile.getInputCapacity() + 1]; // the last card is always uninitialized, reading it runs out of input
+        writtenLocations = new MemoryBits(profile.getMemoryWords());
+        changedLocations = new MemoryBits(profile.getMemoryWords());
         inputInstructionList = new LinkedList<>();
         programLabelMap = new TreeMap<>();
         programLineMap = new TreeMap<>();
         dataSymbolMap = new TreeMap<>();
         dataSymbolSizeMap = new TreeMap<>();
-        lastReadDataSymbolSet = new HashSet<>();
-        breakpointSet = new HashSet<>();
+        dataSymbolAt = new int[_data.length]; // symbols are only allocated in the directly addressable words
+        lastReadDataSymbols = new int[3];
+        backwardBranchCounts = new int[profile.getProgramCapacity()];
+        tierReport = new TierReport();
+        loopDetector = new LoopDetector(_data.length);
+        event = new StepEvent();
+        breakpoints = new Breakpoint[profile.getProgramCapacity() + 1]; // the instruction pointer can fall through past the last line
+        watchpoints = new ArrayList<>();
+        logpoints = new Logpoint[profile.getProgramCapacity() + 1];
+        readWatched = new long[(profile.getMemoryWords() + 63) / 64];
+        writeWatched = new long[(profile.getMemoryWords() + 63) / 64];
 
         clear();
     }
 
     public Interpreter(String fileName, boolean hasLabels) throws Exception {
-        this();
+        this(fileName, hasLabels, MachineProfile.CLASSIC);
+    }
+
+    public Interpreter(String fileName, boolean hasLabels, MachineProfile profile) throws Exception {
+        this(profile);
         readProgram(fileName, hasLabels);
     }
 
+    private Interpreter(Interpreter parent) { // see fork
+        profile = parent.profile;
+        _data = parent._data.clone(); // at most 1000 words, cheaper to copy than to check on every write
+        highMemory = (parent.highMemory == null) ? null : parent.highMemory.fork();
+        _input = parent._input;
+        inputShared = parent.inputShared = true;
+        program = parent.program; // never changed once loaded, loading again replaces it
+        loadedImage = parent.loadedImage;
+        loopIdioms = parent.loopIdioms;
+        loadWarnings = parent.loadWarnings;
+        fileLines = parent.fileLines;
+        writtenLocations = new MemoryBits(profile.getMemoryWords());
+        writtenLocations.copyFrom(parent.writtenLocations);
+        changedLocations = new MemoryBits(profile.getMemoryWords());
+        inputInstructionList = new LinkedList<>(parent.inputInstructionList);
+        programLabelMap = new TreeMap<>(parent.programLabelMap);
+        programLineMap = new TreeMap<>(parent.programLineMap);
+        dataSymbolMap = new TreeMap<>(parent.dataSymbolMap);
+        dataSymbolSizeMap = new TreeMap<>(parent.dataSymbolSizeMap);
+        dataSymbolAt = parent.dataSymbolAt.clone();
+        lastReadDataSymbols = new int[3];
+        backwardBranchCounts = parent.backwardBranchCounts.clone();
+        compilationFailed = parent.compilationFailed; // the compiled class is cached, a fork only makes a new instance
+        tierReport = new TierReport();
+        loopDetector = new LoopDetector(_data.length);
+        event = new StepEvent();
+        breakpoints = new Breakpoint[parent.breakpoints.length]; // a fork starts without breakpoints, watchpoints or logpoints
+        watchpoints = new ArrayList<>();
+        logpoints = new Logpoint[parent.logpoints.length];
+        readWatched = new long[parent.readWatched.length];
+        writeWatched = new long[parent.writeWatched.length];
+
+        fileName = parent.fileName;
+        labelsEnabled = parent.labelsEnabled;
+        checkDirectAddresses = parent.checkDirectAddresses;
+        fusionEnabled = parent.fusionEnabled;
+        loopIdiomsEnabled = parent.loopIdiomsEnabled;
+        closureEnabled = parent.closureEnabled;
+        closureThreshold = parent.closureThreshold;
+        compilationEnabled = parent.compilationEnabled;
+        compileThreshold = parent.compileThreshold;
+        loopDetectionEnabled = parent.loopDetectionEnabled;
+        instructionLimit = parent.instructionLimit;
+        timeLimit = parent.timeLimit;
+        outputLimit = parent.outputLimit;
+        updateBudgets();
+
+        instructionPointer = parent.instructionPointer;
+        lastInstructionPointer = parent.lastInstructionPointer;
+        inputPointer = parent.inputPointer;
+        dataSymbolPointer = parent.dataSymbolPointer;
+        programSize = parent.programSize;
+        inputSize = parent.inputSize;
+        printCount = parent.printCount;
+        resetLastAccessed();
+        resetBudgets();
+    }
+
+    public Interpreter fork() { // an independent copy of the current state, e.g. at a breakpoint, that can run on another thread
+        updateWrittenLocations();
+        return new Interpreter(this);
+    }
+
+    public List<Interpreter> fork(int count) {
+        List<Interpreter> children = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            children.add(fork());
+
+        return children;
+    }
+
+    public void editData(int address, long value) throws Exception { // change a location between steps or runs, e.g. in a fork
+        if (address < 0 || address >= profile.getMemoryWords())
+            throw new Exception("Data index " + address + " exceeds memory range of " + (profile.getMemoryWords() - 1));
+        checkCardValue(value);
+
+        if (address < _data.length) {
+            _data[address] = value;
+            loopDetector.invalidate();
+        } else
+            highMemory.set(address, value);
+
+        updateWrittenLocations();
+        writtenLocations.set(address);
+        changedLocations.set(address);
+    }
+
+    public void editData(String location, long value) throws Exception { // a location, range or symbol as for watchpoints, every word gets the value
+        int[] range;
+        try {
+            range = Watchpoint.resolveRange(location.replaceAll("\\s+", ""), labelsEnabled, dataSymbolMap, dataSymbolSizeMap, profile.getMemoryWords());
+        } catch (IllegalArgumentException e) {
+            throw new Exception("Data not changed because " + e.getMessage());
+        }
+
+        for (int address = range[0]; address <= range[1]; address++)
+            editData(address, value);
+    }
+
+    public void editInput(int card, long value) throws Exception { // change or add a card the program hasn't read yet
+        int last = Math.min(inputSize, profile.getInputCapacity() - 1);
+        if (card < inputPointer || card > last)
+            throw new Exception("Input card " + card + " can't be changed, only cards " + inputPointer + " to " + last + " are left to read");
+        checkCardValue(value);
+
+        ownInput();
+        _input[card] = value;
+        if (card == inputSize)
+            inputSize++;
+
+        if (monitor != null) {
+            monitor.publishInput(_input, inputSize);
+            publish(programComplete() ? StateMonitorReader.HALTED : StateMonitorReader.STOPPED, 0);
+        }
+    }
+
+    private static void checkCardValue(long value) throws Exception {
+        if (value > 9999999999L || value < -9999999999L)
+            throw new Exception("Value " + value + " doesn't fit on a card");
+    }
+
+    private void ownInput() {
+        if (inputShared) {
+            _input = _input.clone();
+            inputShared = false;
+        }
+    }
+
     private void clear() {
+        resetExecution();
+        programSize = 0;
+        inputSize = 0;
+        dataSymbolPointer = 0;
+
+        Arrays.fill(_data, Long.MIN_VALUE);
+        ownInput();
+        Arrays.fill(_input, Long.MIN_VALUE);
+        Arrays.fill(dataSymbolAt, -1);
+
+        program = new DecodedProgram(profile.getProgramCapacity());
+        fileLines = new int[profile.getProgramCapacity()];
+        loadedImage = null;
+        loopIdioms = null;
+        controlFlowGraph = null;
+        closureProgram = null;
+        compiledProgram = null;
+        compilationFailed = false;
+        writtenLocations.clear();
+        programLabelMap.clear();
+        programLineMap.clear();
+        dataSymbolMap.clear();
+        dataSymbolSizeMap.clear();
+    }
+
+    public void checkpoint(OutputStream out) throws Exception { // see Checkpoint for the format, out is left open
+        if (loadedImage == null)
+            throw new Exception("A program must be loaded before it can be checkpointed");
+
+        updateWrittenLocations(); // not stored, but a restore rebuilds it the same way
+        Checkpoint.Writer w = new Checkpoint.Writer(Channels.newChannel(out));
+        w.putInt(Checkpoint.MAGIC);
+        w.putInt(Checkpoint.VERSION);
+        w.putInt(profile.getMemoryWords());
+        w.putInt(profile.getInputCapacity());
+        w.putInt(profile.getProgramCapacity());
+        w.putString(fileName);
+        w.putBoolean(labelsEnabled);
+
+        w.putInt(programSize);
+        for (int i = 0; i < programSize; i++) {
+            w.putInt(program.opcodes[i]);
+            w.putInt(program.opn1[i]);
+            w.putInt(program.opn2[i]);
+            w.putInt(program.opn3[i]);
+        }
+        w.putMap(programLineMap);
+        w.putMap(programLabelMap);
+        w.putMap(dataSymbolMap);
+        w.putMap(dataSymbolSizeMap);
+
+        loadedImage.write(w);
+        w.putRuns(_data, highMemory);
+        w.putInt(inputSize);
+        w.putLongs(_input, inputSize);
+
+        w.putInt(instructionPointer);
+        w.putInt(lastInstructionPointer);
+        w.putInt(inputPointer);
+        w.putInt(dataSymbolPointer);
+        w.putLong(printCount);
+        w.putLongs(tierReport.counts, tierReport.counts.length);
+        w.putInt(tierReport.promotionLine);
+        w.putInt((tierReport.promotedTier == null) ? -1 : tierReport.promotedTier.ordinal());
+
+        List<Breakpoint> breakpoints = getBreakpoints();
+        w.putInt(breakpoints.size());
+        for (Breakpoint breakpoint : breakpoints) {
+            w.putInt(breakpoint.getLine());
+            w.putString(breakpoint.getCondition());
+            w.putInt(breakpoint.getHitCount());
+            w.putInt(breakpoint.hits);
+        }
+        w.putInt(watchpoints.size());
+        for (Watchpoint watchpoint : watchpoints) {
+            w.putString(watchpoint.getLocation());
+            w.putBoolean(watchpoint.watchesReads());
+            w.putBoolean(watchpoint.halts());
+            w.putInt(watchpoint.hits);
+        }
+        List<Logpoint> logpoints = getLogpoints();
+        w.putInt(logpoints.size());
+        for (Logpoint logpoint : logpoints) {
+            w.putInt(logpoint.getLine());
+            w.putString(logpoint.getExpression());
+            w.putInt(logpoint.hits);
+        }
+
+        w.flush();
+    }
+
+    public void restore(InputStream in) throws Exception { // replaces the loaded program and its state with a checkpoint's
+        Checkpoint.Reader r = new Checkpoint.Reader(Channels.newChannel(in));
+        if (r.getInt() != Checkpoint.MAGIC)
+            throw new Exception("Not a checkpoint");
+        int version = r.getInt();
+        if (version != Checkpoint.VERSION)
+            throw new Exception("Checkpoint format " + version + " can't be read, only format " + Checkpoint.VERSION);
+
+        MachineProfile taken = new MachineProfile(r.getInt(), r.getInt(), r.getInt());
+        if (taken.getMemoryWords() != profile.getMemoryWords() || taken.getInputCapacity() != profile.getInputCapacity()
+                || taken.getProgramCapacity() != profile.getProgramCapacity())
+            throw new Exception("The checkpoint was taken on a machine with " + taken + ", use --profile " + taken.getMemoryWords()
+                    + "," + taken.getInputCapacity() + "," + taken.getProgramCapacity());
+
+        clearBreakpoints();
+        clearWatchpoints();
+        clearLogpoints();
+        clear();
+        try {
+            fileName = r.getString();
+            labelsEnabled = r.getBoolean();
+
+            programSize = r.getCount(profile.getProgramCapacity(), "program lines");
+            for (int i = 0; i < programSize; i++) {
+                int opcode = r.getInt(), a = r.getInt(), b = r.getInt(), c = r.getInt();
+                if (opcode < Opcode.MOVE || opcode > Opcode.HALT || a < 0 || a > 999 || b < 0 || b > 999 || c < 0 || c > 999)
+                    throw new IOException("The checkpoint's program line " + i + " isn't a card");
+
+                program.setCard(i, Opcode.isPositive(opcode), Opcode.getOp(opcode), a, b, c); // decoded again, as if it were loaded
+                if (program.opcodes[i] != opcode)
+                    throw new IOException("The checkpoint's program line " + i + " isn't a card");
+            }
+            r.getMap(programLineMap, programSize);
+            r.getMap(programLabelMap, programSize);
+            r.getMap(dataSymbolMap, _data.length);
+            r.getMap(dataSymbolSizeMap, _data.length);
+            for (Map.Entry<Integer, Integer> line : programLineMap.entrySet()) {
+                if (line.getKey() < 0 || line.getKey() >= programSize)
+                    throw new IOException("The checkpoint's file lines don't match its program");
+                fileLines[line.getKey()] = line.getValue();
+            }
+            for (Map.Entry<Integer, Integer> symbol : dataSymbolMap.entrySet()) {
+                Integer size = dataSymbolSizeMap.get(symbol.getKey());
+                if (size == null || size < 1 || symbol.getValue() < 0 || symbol.getValue() + size > _data.length)
+                    throw new IOException("The checkpoint's data symbol " + symbol.getKey() + " doesn't fit in memory");
+                Arrays.fill(dataSymbolAt, symbol.getValue(), symbol.getValue() + size, symbol.getKey());
+            }
+
+            // the memory image goes through the live arrays, then the current state replaces it
+            r.getRuns(_data, null, _data.length);
+            inputSize = r.getCount(profile.getInputCapacity(), "input cards");
+            r.getLongs(_input, inputSize);
+
+            // the verifier's guarantees let the faster tiers skip checks, so they're proven again rather than read
+            if (labelsEnabled)
+                linkProgram();
+            analyzeProgram();
+
+            writtenStale = true;
+            updateWrittenLocations();
+            loadedImage = new LoadedImage(_data, _input, inputSize, writtenLocations);
+            Arrays.fill(_data, Long.MIN_VALUE);
+            writtenLocations.clear();
+
+            r.getRuns(_data, highMemory, profile.getMemoryWords());
+            Arrays.fill(_input, 0, inputSize, Long.MIN_VALUE);
+            inputSize = r.getCount(profile.getInputCapacity(), "input cards");
+            r.getLongs(_input, inputSize);
+
+            instructionPointer = r.getInt();
+            lastInstructionPointer = r.getInt();
+            inputPointer = r.getInt();
+            dataSymbolPointer = r.getInt();
+            if (instructionPointer < 0 || instructionPointer > programSize || lastInstructionPointer < -1 || lastInstructionPointer >= programSize
+                    || inputPointer < 0 || inputPointer > inputSize || dataSymbolPointer < 0 || dataSymbolPointer > _data.length)
+                throw new IOException("The checkpoint's instruction, input or data symbol pointer is out of range");
+
+            printCount = r.getLong();
+            r.getLongs(tierReport.counts, tierReport.counts.length);
+            tierReport.promotionLine = r.getInt();
+            int tier = r.getInt();
+            tierReport.promotedTier = (tier < 0 || tier >= Tier.values().length) ? null : Tier.values()[tier];
+            resetBudgets();
+
+            writtenStale = true; // rebuilt from the initialized words
+            changedLocations.clear();
+
+            for (int i = r.getCount(programSize, "breakpoints"); i > 0; i--) {
+                int line = r.getInt();
+                String condition = r.getString();
+                int hitCount = r.getInt(), hits = r.getInt();
+                setBreakpoint(line, condition, hitCount);
+                if (breakpointSetOnRow(line))
+                    breakpoints[line].hits = hits;
+            }
+            for (int i = r.getCount(Integer.MAX_VALUE, "watchpoints"); i > 0; i--) {
+                String location = r.getString();
+                boolean reads = r.getBoolean(), halt = r.getBoolean();
+                int hits = r.getInt();
+                setWatchpoint(location, reads, halt);
+                if (getWatchpoint(location) != null)
+                    getWatchpoint(location).hits = hits;
+            }
+            for (int i = r.getCount(programSize, "logpoints"); i > 0; i--) {
+                int line = r.getInt();
+                String expression = r.getString();
+                int hits = r.getInt();
+                setLogpoint(line, expression);
+                if (logpointSetOnRow(line))
+                    logpoints[line].hits = hits;
+            }
+        } catch (Exception e) {
+            clear(); // nothing half restored is left behind
+            throw new Exception("The checkpoint couldn't be restored: " + e.getMessage());
+        }
+
+        if (monitor != null) {
+            monitor.publishInput(_input, inputSize);
+            publish(programComplete() ? StateMonitorReader.HALTED : StateMonitorReader.STOPPED, 0);
+        }
+    }
+
+    public void reset() throws Exception { // back to the state right after loading, without parsing the cards again
+        if (loadedImage == null)
+            throw new Exception("A program must be loaded before it can be reset");
+
+        resetExecution();
+        ownInput();
+        inputSize = loadedImage.restore(_data, _input, inputSize, writtenLocations);
+        if (monitor != null) {
+            monitor.publishInput(_input, inputSize);
+            publish(StateMonitorReader.LOADED, 0);
+        }
+    }
+
+    private void resetExecution() { // everything running the program changes, other than memory
         lastInstructionPointer = -1;
         instructionPointer = 0;
         inputPointer = 0;
         lastReadProgramLabel = -1;
-        lastReadDataSymbolSet.clear();
+        lastReadDataSymbolCount = 0;
         lastWrittenDataSymbol = -1;
         lastWrittenDataLocation = -1;
         lastReadInputCard = -1;
-        programSize = 0;
-        inputSize = 0;
-        dataSymbolPointer = 0;
 
-        for (int i = 0; i < MAX_MEM; i++) {
-            _data[i] = Long.MIN_VALUE;
-            _input[i] = Long.MIN_VALUE;
+        Arrays.fill(backwardBranchCounts, 0); // the tiers built for the program are kept, it gets promoted again as it warms up
+        if (highMemory != null)
+            highMemory.clear();
+
+        tierReport.clear();
+        printCount = 0;
+        resetBudgets();
+        loopDetector.invalidate();
+        loopDetector.restart();
+        changedLocations.clear();
+        writtenStale = false;
+
+        for (int i = 0; i < breakpoints.length && breakpointCount > 0; i++) { // hit counts start over with the program
+            if (breakpoints[i] != null)
+                breakpoints[i].hits = 0;
         }
-
-        _program = new char[MAX_MEM][];
-        usedDataLocations.clear();
-        programLabelMap.clear();
-        programLineMap.clear();
-        dataSymbolMap.clear();
-        dataSymbolSizeMap.clear();
+        for (Watchpoint watchpoint : watchpoints)
+            watchpoint.hits = 0;
+        for (int i = 0; i < logpoints.length && logpointCount > 0; i++) {
+            if (logpoints[i] != null)
+                logpoints[i].hits = 0;
+        }
+        triggeredWatchpoint = null;
     }
 
     private void readProgram(String file, boolean enableLabels) throws Exception {
@@ -117,6 +674,8 @@ public class Interpreter {
         if (this.fileName == null || !this.fileName.equals(file)) {
             this.fileName = file;
             clearBreakpoints(); // clear breakpoints if a new file is being read
+            clearWatchpoints();
+            clearLogpoints();
         }
 
         loadProgram(report, enableLabels, autoLabelDetection);
@@ -264,8 +823,8 @@ public class Interpreter {
 
                             if (instruction.getOpn2() == 0) {
                                 throw new UnsupportedOperationException("Can't allocate zero words for data symbol " + instruction.getOpn1());
-                            } else if (dataSymbolPointer + instruction.getOpn2() > MAX_MEM) {
-                                int excess = dataSymbolPointer + instruction.getOpn2() - MAX_MEM;
+                            } else if (dataSymbolPointer + instruction.getOpn2() > _data.length) {
+                                int excess = dataSymbolPointer + instruction.getOpn2() - _data.length;
                                 throw new UnsupportedOperationException("Memory limit exceeded by " + excess + " word" + ((excess == 1) ? "" : "s"));
                             } else {
                                 dataSymbolMap.put(instruction.getOpn1(), dataSymbolPointer);
@@ -276,7 +835,8 @@ public class Interpreter {
                                 // initialize memory locations to paired card value
                                 for (int j = dataSymbolPointer; j < dataSymbolPointer + instruction.getOpn2(); j++) {
                                     _data[j] = dataValue;
-                                    usedDataLocations.add(j);
+                                    dataSymbolAt[j] = instruction.getOpn1();
+                                    writtenLocations.set(j);
                                     lineCount++;
                                 }
 
@@ -284,7 +844,7 @@ public class Interpreter {
                             }
                         } else {
                             _data[lineCount] = Long.parseLong(parsedCardString);
-                            usedDataLocations.add(lineCount);
+                            writtenLocations.set(lineCount);
                         }
                         break;
                     }
@@ -311,8 +871,9 @@ public class Interpreter {
                                 }
                             }
                         }
-                        _program[lineCount] = parsedCardChars;
+                        program.setCard(lineCount, parsedCardChars); // decode once, execution reads the decoded form
                         programLineMap.put(lineCount, fileLine); // preserve relationship between program line and file line
+                        fileLines[lineCount] = fileLine;
                         break;
                     }
                     case INPUT: {
@@ -346,10 +907,79 @@ public class Interpreter {
         if (programSize == 0)
             throw new Exception("No program cards were loaded");
 
+        if (labelsEnabled)
+            linkProgram();
+
+        analyzeProgram();
+        compileBreakpointConditions();
+        resolveWatchpoints();
+        resolveLogpoints();
+
+        if (!loadWarnings.isEmpty()) {
+            reportLn(report);
+            reportLn(report, "--Verifier Warnings--");
+            for (String warning : loadWarnings)
+                reportLn(report, warning);
+        }
+
+        loadedImage = new LoadedImage(_data, _input, inputSize, writtenLocations);
+        if (monitor != null) {
+            monitor.publishInput(_input, inputSize);
+            publish(StateMonitorReader.LOADED, 0);
+        }
+
         reportLn(report);
         reportLn(report, "--Program Loaded Successfully--");
     }
 
+    private void analyzeProgram() { // verify, fuse and find loop idioms in a linked program, with data memory as loaded
+        loadWarnings = ProgramVerifier.verify(program, programSize, _data, programLineMap, fileName);
+        checkDirectAddresses = false;
+        for (int i = 0; i < programSize; i++)
+            checkDirectAddresses |= (program.verified[i] & ProgramVerifier.ADDRESSES) == 0;
+
+        program.fuseSuperinstructions(programSize);
+        loopIdioms = LoopIdioms.recognize(program, programSize);
+    }
+
+    private void linkProgram() throws Exception { // resolve labels and data symbols to absolute lines and addresses
+        for (int i = 0; i < programSize; i++) {
+            int opcode = program.opcodes[i];
+
+            if (Opcode.usesDataOperand(opcode, 1))
+                program.addr1[i] = resolveDataSymbol(program.opn1[i], i);
+            if (Opcode.usesDataOperand(opcode, 2))
+                program.addr2[i] = resolveDataSymbol(program.opn2[i], i);
+            if (Opcode.usesDataOperand(opcode, 3))
+                program.addr3[i] = resolveDataSymbol(program.opn3[i], i);
+
+            switch (Opcode.getArrayOperand(opcode)) {
+                case 1: program.bound[i] = dataSymbolSizeMap.get(program.opn1[i]); break;
+                case 2: program.bound[i] = dataSymbolSizeMap.get(program.opn2[i]); break;
+            }
+
+            if (Opcode.isBranch(opcode)) {
+                Integer line = programLabelMap.get(program.opn3[i]);
+                if (line == null)
+                    throw new Exception("Program label " + program.opn3[i] + " has not been defined" + lineSuffix(i));
+
+                program.target[i] = line;
+            }
+        }
+    }
+
+    private int resolveDataSymbol(int symbol, int line) throws Exception {
+        Integer address = dataSymbolMap.get(symbol);
+        if (address == null)
+            throw new Exception("Data symbol " + symbol + " has not been declared" + lineSuffix(line));
+
+        return address;
+    }
+
+    private String lineSuffix(int line) {
+        return " (line " + programLineMap.get(line) + " of " + fileName + ")";
+    }
+
     public static void exportProgram(String inFile, String outFile) throws Exception {
         List<String> unparsedList = new LinkedList<String>();
         String currLine;
@@ -423,36 +1053,65 @@ public class Interpreter {
     }
 
     public void clearBreakpoints() {
-        breakpointSet.clear();
+        Arrays.fill(breakpoints, null);
+        breakpointCount = 0;
     }
 
     public void clearUnusedBreakpoints() {
-        LinkedList<Integer> unusedBreakpoints = new LinkedList<>();
-
-        // find breakpoints beyond the span of the program
-        for (int row : breakpointSet) {
-            if (row >= programSize)
-                unusedBreakpoints.add(row);
-        }
-
-        // remove the unused breakpoints
-        for (int row : unusedBreakpoints) {
-            breakpointSet.remove(row);
+        // remove breakpoints and logpoints beyond the span of the program
+        for (int row = programSize; row < breakpoints.length; row++) {
+            if (breakpoints[row] != null) {
+                breakpoints[row] = null;
+                breakpointCount--;
+            }
+            if (logpoints[row] != null) {
+                logpoints[row] = null;
+                logpointCount--;
+            }
         }
     }
 
     public String setBreakpoint(int row) {
-        if (row >= 0 && row < programSize) {
-            breakpointSet.add(row);
-            return "Breakpoint set on row " + row;
-        } else {
+        return setBreakpoint(row, null, 0);
+    }
+
+    // condition (e.g. data[5] >= 100) and hit count are optional, null and 0 break on every arrival
+    public String setBreakpoint(int row, String condition, int hitCount) {
+        if (row < 0 || row >= programSize)
             return "Breakpoint not set because line " + row + " doesn't exist in the program";
+        if (hitCount < 0)
+            return "Breakpoint not set because hit count " + hitCount + " is negative";
+
+        Breakpoint breakpoint = new Breakpoint(row, (condition == null || condition.trim().isEmpty()) ? null : condition.trim(), hitCount);
+        try {
+            compileCondition(breakpoint);
+        } catch (IllegalArgumentException e) {
+            return "Breakpoint not set because " + e.getMessage();
+        }
+
+        if (breakpoints[row] == null)
+            breakpointCount++;
+        breakpoints[row] = breakpoint;
+        return "Breakpoint set on " + breakpoint;
+    }
+
+    // a line number, optionally followed by "if condition" and/or "hit count", e.g. 12 if sym14[3] >= 100 hit 5
+    public String setBreakpoint(String spec) {
+        Matcher m = BREAKPOINT_PATTERN.matcher(spec);
+        if (!m.matches())
+            return "Breakpoint not set because " + spec.trim() + " isn't a line number followed by if condition or hit count";
+
+        try {
+            return setBreakpoint(Integer.parseInt(m.group(1)), m.group(2), (m.group(3) == null) ? 0 : Integer.parseInt(m.group(3)));
+        } catch (NumberFormatException e) {
+            return "Breakpoint not set because " + spec.trim() + " has a number that is too large";
         }
     }
 
     public String removeBreakpoint(int row) {
-        if (breakpointSet.contains(row)) {
-            breakpointSet.remove(row);
+        if (breakpointSetOnRow(row)) {
+            breakpoints[row] = null;
+            breakpointCount--;
             return "Breakpoint unset on row " + row;
         } else {
             return "Breakpoint " + row + " not unset because it doesn't exist";
@@ -460,7 +1119,232 @@ public class Interpreter {
     }
 
     public boolean breakpointIsSet(int row) {
-        return breakpointSet.contains(row);
+        return breakpointSetOnRow(row);
+    }
+
+    public List<Breakpoint> getBreakpoints() {
+        List<Breakpoint> list = new ArrayList<>(breakpointCount);
+        for (int i = 0; i < breakpoints.length && list.size() < breakpointCount; i++) {
+            if (breakpoints[i] != null)
+                list.add(breakpoints[i]);
+        }
+
+        return list;
+    }
+
+    private void compileCondition(Breakpoint breakpoint) {
+        breakpoint.predicate = (breakpoint.getCondition() == null) ? null
+                : BreakCondition.compile(breakpoint.getCondition(), labelsEnabled, dataSymbolMap, dataSymbolSizeMap, _data.length);
+    }
+
+    private void compileBreakpointConditions() { // symbols can move when the program is reloaded, drop conditions that no longer resolve
+        for (int i = 0; i < breakpoints.length && breakpointCount > 0; i++) {
+            if (breakpoints[i] == null)
+                continue;
+
+            try {
+                compileCondition(breakpoints[i]);
+            } catch (IllegalArgumentException e) {
+                breakpoints[i] = null;
+                breakpointCount--;
+            }
+        }
+    }
+
+    public void clearLogpoints() {
+        Arrays.fill(logpoints, null);
+        logpointCount = 0;
+    }
+
+    // expression is a comma separated list of locations, as for watchpoints (e.g. data[4], sym14[0..2])
+    public String setLogpoint(int row, String expression) {
+        if (row < 0 || row >= programSize)
+            return "Logpoint not set because line " + row + " doesn't exist in the program";
+        if (expression == null || expression.trim().isEmpty())
+            return "Logpoint not set because there are no data locations to log";
+
+        Logpoint logpoint = new Logpoint(row, expression);
+        try {
+            logpoint.resolve(labelsEnabled, dataSymbolMap, dataSymbolSizeMap, profile.getMemoryWords());
+        } catch (IllegalArgumentException e) {
+            return "Logpoint not set because " + e.getMessage();
+        }
+
+        if (logpoints[row] == null)
+            logpointCount++;
+        logpoints[row] = logpoint;
+        return "Logpoint set on " + logpoint;
+    }
+
+    public String setLogpoint(String spec) { // line:expression
+        int colon = spec.indexOf(':');
+        try {
+            return setLogpoint(Integer.parseInt(spec.substring(0, Math.max(colon, 0)).trim()), spec.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            return "Logpoint not set because " + spec.trim() + " isn't a line number followed by : and data locations";
+        }
+    }
+
+    public String removeLogpoint(int row) {
+        if (logpointSetOnRow(row)) {
+            logpoints[row] = null;
+            logpointCount--;
+            return "Logpoint unset on row " + row;
+        } else {
+            return "Logpoint " + row + " not unset because it doesn't exist";
+        }
+    }
+
+    public boolean logpointSetOnRow(int row) { return row >= 0 && row < logpoints.length && logpoints[row] != null; }
+    public Logpoint getLogpoint(int row) { return logpointSetOnRow(row) ? logpoints[row] : null; }
+
+    public List<Logpoint> getLogpoints() {
+        List<Logpoint> list = new ArrayList<>(logpointCount);
+        for (int i = 0; i < logpoints.length && list.size() < logpointCount; i++) {
+            if (logpoints[i] != null)
+                list.add(logpoints[i]);
+        }
+
+        return list;
+    }
+
+    public void flushLogs() { // waits until every log reached so far has been delivered
+        if (logFormatter == null)
+            return;
+
+        try {
+            logFormatter.submit(new Runnable() {
+                @Override
+                public void run() {}
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // a listener failed, the logs before it have still been delivered
+        }
+    }
+
+    private void resolveLogpoints() {
+        for (int i = 0; i < logpoints.length && logpointCount > 0; i++) {
+            if (logpoints[i] == null)
+                continue;
+
+            try {
+                logpoints[i].resolve(labelsEnabled, dataSymbolMap, dataSymbolSizeMap, profile.getMemoryWords());
+            } catch (IllegalArgumentException e) {
+                logpoints[i] = null;
+                logpointCount--;
+            }
+        }
+    }
+
+    private void log(int line) { // copies the values on this thread, formats them on the log thread
+        final Logpoint logpoint = logpoints[line];
+        final int pass = ++logpoint.hits;
+        final LogListener listener = logListener;
+        if (listener == null)
+            return;
+
+        final int[] ranges = logpoint.ranges;
+        final long[] values = logpoint.capture(_data, highMemory, ranges);
+        if (logFormatter == null) {
+            logFormatter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "logpoint formatter");
+                    thread.setDaemon(true); // never keeps the JVM alive
+                    return thread;
+                }
+            });
+        }
+
+        logFormatter.execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.logged(logpoint.format(pass, ranges, values));
+            }
+        });
+    }
+
+    public void clearWatchpoints() {
+        watchpoints.clear();
+        updateWatchedLocations();
+    }
+
+    // location is an address or range (12, data[10..19]) or in label mode a symbol, word or range of words (sym14, sym14[3], sym14[2..5])
+    public String setWatchpoint(String location, boolean reads, boolean halt) {
+        Watchpoint watchpoint = new Watchpoint(location, reads, halt);
+        try {
+            watchpoint.resolve(labelsEnabled, dataSymbolMap, dataSymbolSizeMap, profile.getMemoryWords());
+        } catch (IllegalArgumentException e) {
+            return "Watchpoint not set because " + e.getMessage();
+        }
+
+        Watchpoint existing = getWatchpoint(location);
+        if (existing != null)
+            watchpoints.remove(existing); // replaced, e.g. to watch reads as well
+        watchpoints.add(watchpoint);
+        updateWatchedLocations();
+        return "Watchpoint set on " + watchpoint;
+    }
+
+    public String removeWatchpoint(String location) {
+        Watchpoint existing = getWatchpoint(location);
+        if (existing == null)
+            return "Watchpoint " + location.trim() + " not unset because it doesn't exist";
+
+        watchpoints.remove(existing);
+        updateWatchedLocations();
+        return "Watchpoint unset on " + existing.getLocation();
+    }
+
+    public Watchpoint getWatchpoint(String location) {
+        String key = location.replaceAll("\\s+", "");
+        for (Watchpoint watchpoint : watchpoints) {
+            if (watchpoint.getLocation().equalsIgnoreCase(key))
+                return watchpoint;
+        }
+
+        return null;
+    }
+
+    private void resolveWatchpoints() { // like breakpoint conditions, drop watchpoints whose symbols are gone
+        for (Iterator<Watchpoint> it = watchpoints.iterator(); it.hasNext(); ) {
+            try {
+                it.next().resolve(labelsEnabled, dataSymbolMap, dataSymbolSizeMap, profile.getMemoryWords());
+            } catch (IllegalArgumentException e) {
+                it.remove();
+            }
+        }
+
+        updateWatchedLocations();
+    }
+
+    private void updateWatchedLocations() {
+        Arrays.fill(readWatched, 0);
+        Arrays.fill(writeWatched, 0);
+        for (Watchpoint watchpoint : watchpoints) {
+            for (int address = watchpoint.first; address <= watchpoint.last; address++) {
+                writeWatched[address >>> 6] |= 1L << address;
+                if (watchpoint.watchesReads())
+                    readWatched[address >>> 6] |= 1L << address;
+            }
+        }
+
+        watching = !watchpoints.isEmpty();
+    }
+
+    private void watchHit(int address, boolean write, long value) { // only called once a bitmap says the address is watched
+        for (Watchpoint watchpoint : watchpoints) {
+            if (!watchpoint.covers(address) || !(write || watchpoint.watchesReads()))
+                continue;
+
+            watchpoint.hits++;
+            if (watchpoint.halts())
+                triggeredWatchpoint = watchpoint;
+            if (watchListener != null)
+                watchListener.watchpointHit(watchpoint, lastInstructionPointer, address, write, value);
+        }
     }
 
     private void reportLn(StringBuilder sb) {
@@ -491,62 +1375,119 @@ public class Interpreter {
         return instructionString;
     }
 
-    private long getDataValue(int index) throws Exception {
-        if (index > 999)
-            throw new Exception("Data index " + index + " exceeds memory range of " + (MAX_MEM-1));
+    private long getDataValue(int index) throws ProgramFault {
+        if (index < 0 || index >= _data.length)
+            return getHighDataValue(index);
 
         if (_data[index] == Long.MIN_VALUE)
-            throw new Exception("Attempted to access uninitialized memory location " + index);
-        else
-            return _data[index];
+            throw new ProgramFault(Fault.UNINITIALIZED_READ, index);
+
+        if (watching && (readWatched[index >>> 6] & 1L << index) != 0)
+            watchHit(index, false, _data[index]);
+
+        return _data[index];
+    }
+
+    private long getHighDataValue(int index) throws ProgramFault { // computed index past the directly addressable words
+        if (highMemory == null || index < 0 || index >= profile.getMemoryWords()) // a negative offset is out of range too
+            throw new ProgramFault(Fault.READ_OUT_OF_RANGE, index, profile.getMemoryWords() - 1);
+
+        long value = highMemory.get(index);
+        if (value == Long.MIN_VALUE)
+            throw new ProgramFault(Fault.UNINITIALIZED_READ, index);
+
+        if (watching && (readWatched[index >>> 6] & 1L << index) != 0)
+            watchHit(index, false, value);
+
+        return value;
+    }
+
+    private long getData(int address) throws ProgramFault { // direct operand, only range checked if the verifier couldn't prove it
+        if (checkDirectAddresses && address >= _data.length)
+            throw new ProgramFault(Fault.READ_OUT_OF_RANGE, address, profile.getMemoryWords() - 1);
+
+        if (tracking && labelsEnabled)
+            recordDataSymbolRead(dataSymbolAt[address]);
+
+        long value = _data[address];
+        if (value == Long.MIN_VALUE)
+            throw new ProgramFault(Fault.UNINITIALIZED_READ, address);
+
+        if (watching && (readWatched[address >>> 6] & 1L << address) != 0)
+            watchHit(address, false, value);
+
+        return value;
+    }
+
+    private long getData(int base, int offset, int bound) throws ProgramFault { // array access, bound only applies to symbols
+        if (labelsEnabled) {
+            if (bound <= offset)
+                throw new ProgramFault(Fault.OFFSET_OUT_OF_BOUNDS, offset, dataSymbolAt[base]);
+
+            if (tracking)
+                recordDataSymbolRead(dataSymbolAt[base]);
+        }
+
+        return getDataValue(base + offset);
     }
 
-    private long getData(int index) throws Exception {
-        return getData(index, 0);
+    private void recordDataSymbolRead(int symbol) {
+        if (!isLastReadDataSymbol(symbol))
+            lastReadDataSymbols[lastReadDataSymbolCount++] = symbol;
     }
 
-    private long getData(int index, int offset) throws Exception {
-        if (!labelsEnabled)
-            return getDataValue(index + offset);
+    private void setDataValue(long value, int index) throws ProgramFault {
+        if (index >= 0 && index < _data.length)
+            storeData(value, index);
+        else if (highMemory == null || index < 0 || index >= profile.getMemoryWords())
+            throw new ProgramFault(Fault.WRITE_OUT_OF_RANGE, index, profile.getMemoryWords() - 1);
         else {
-            if (!dataSymbolMap.containsKey(index))
-                throw new Exception("Data symbol " + index + " has not been declared");
-            else if (dataSymbolSizeMap.get(index) <= offset)
-                throw new Exception("Offset " + offset + " is out of bounds for data symbol " + index);
-            else {
-                lastReadDataSymbolSet.add(index);
-                return getDataValue(dataSymbolMap.get(index) + offset);
+            if (tracking) {
+                writtenLocations.set(index);
+                changedLocations.set(index);
+                lastWrittenDataLocation = index;
             }
+
+            highMemory.set(index, value); // the loop detector sees the memory's version change
+            if (watching && (writeWatched[index >>> 6] & 1L << index) != 0)
+                watchHit(index, true, value);
         }
     }
 
-    private void setDataValue(long value, int index) throws Exception {
-        if (index > 999)
-            throw new Exception("Data index " + index + " exceeds maximum memory range of " + (MAX_MEM-1));
-        else {
-            _data[index] = value;
+    private void storeData(long value, int index) {
+        if (tracking) {
+            writtenLocations.set(index);
+            changedLocations.set(index);
             lastWrittenDataLocation = index;
-            usedDataLocations.add(index);
         }
+
+        if (loopDetectionEnabled)
+            loopDetector.write(index, _data[index], value);
+        _data[index] = value;
+        if (watching && (writeWatched[index >>> 6] & 1L << index) != 0)
+            watchHit(index, true, value);
     }
 
-    private void setData(long value, int index) throws Exception {
-        setData(value, index, 0);
+    private void setData(long value, int address) throws ProgramFault { // direct operand
+        if (checkDirectAddresses && address >= _data.length)
+            throw new ProgramFault(Fault.WRITE_OUT_OF_RANGE, address, profile.getMemoryWords() - 1);
+
+        if (tracking && labelsEnabled)
+            lastWrittenDataSymbol = dataSymbolAt[address];
+
+        storeData(value, address);
     }
 
-    private void setData(long value, int index, int offset) throws Exception {
-        if (!labelsEnabled)
-            setDataValue(value, index + offset);
-        else {
-            if (!dataSymbolMap.containsKey(index))
-                throw new Exception("Data symbol " + index + " has not been declared");
-            else if (dataSymbolSizeMap.get(index) <= offset)
-                throw new Exception("Offset " + offset + " is out of bounds for data symbol " + index);
-            else {
-                lastWrittenDataSymbol = index;
-                setDataValue(value, dataSymbolMap.get(index) + offset);
-            }
+    private void setData(long value, int base, int offset, int bound) throws ProgramFault {
+        if (labelsEnabled) {
+            if (bound <= offset)
+                throw new ProgramFault(Fault.OFFSET_OUT_OF_BOUNDS, offset, dataSymbolAt[base]);
+
+            if (tracking)
+                lastWrittenDataSymbol = dataSymbolAt[base];
         }
+
+        setDataValue(value, base + offset);
     }
 
     public static String instructionToString(long instruction) {
@@ -554,11 +1495,11 @@ public class Interpreter {
     }
 
     public Instruction getProgramInstruction(int index) throws Exception {
-        if (_program[index] == null)
+        Instruction instruction = program.getInstruction(index);
+        if (instruction == null)
             throw new UnsupportedOperationException("Program line " + index + " has not been set. Missing end card?");
-        else {
-            return parseInstruction(_program[index]);
-        }
+        else
+            return instruction;
     }
 
     private Instruction parseInstruction(char[] instruction) {
@@ -575,358 +1516,614 @@ public class Interpreter {
     }
 
     public boolean programComplete() {
-        return (lastInstructionPointer > 0) && (String.valueOf(_program[lastInstructionPointer]).equals("+9000000000"));
+        return (lastInstructionPointer > 0) && (program.opcodes[lastInstructionPointer] == Opcode.HALT);
+    }
+
+    public void runNextInstruction() throws Exception {
+        if (exhaustedBudget != null)
+            resetBudgets(); // resuming the run a budget stopped
+        resetLastAccessed();
+        triggeredWatchpoint = null;
+        int line = instructionPointer;
+        if (logpointCount > 0 && lastInstructionPointer == -1 && logpointSetOnRow(line))
+            log(line); // arriving at the first line
+
+        tierReport.counts[Tier.INTERPRETER.ordinal()]++;
+        long started = (timeLimit > 0) ? System.nanoTime() : 0;
+        boolean backward;
+        try {
+            execute(line);
+            if (timeLimit > 0) { // only the time spent running steps counts, not the time between them
+                runStarted = System.nanoTime();
+                runNanos += runStarted - started;
+            }
+
+            backward = instructionPointer <= lastInstructionPointer;
+            if (backward && loopDetectionEnabled && loopDetector.sample(_data, highVersion(), instructionPointer, inputPointer))
+                throw infiniteLoop();
+        } catch (Exception e) {
+            if (e instanceof ProgramFault && ((ProgramFault) e).getFault() == Fault.MISSING_LINE)
+                tierReport.counts[Tier.INTERPRETER.ordinal()]--; // a line without a card never ran
+            if (monitor != null)
+                publish(StateMonitorReader.FAULTED, 0);
+            throw e;
+        }
+
+        if (backward && budgeted)
+            budgetExhausted(0, true);
+        if (monitor != null)
+            publish(programComplete() ? StateMonitorReader.HALTED : StateMonitorReader.STOPPED, 0);
+
+        if (stepListener != null) {
+            event.writtenAddress = lastWrittenDataLocation;
+            event.readInputCard = lastReadInputCard;
+            stepListener.stepExecuted(event);
+        }
+
+        if (logpointCount > 0 && logpointSetOnRow(instructionPointer))
+            log(instructionPointer); // after the step is reported, the log is about arriving at the next line
+    }
+
+    public boolean runToCompletion() throws Exception { // run without debugger bookkeeping, returns false if a breakpoint, watchpoint or budget stopped it
+        if (exhaustedBudget != null)
+            resetBudgets(); // resuming the run a budget stopped
+        runStarted = System.nanoTime();
+        boolean checkBreakpoints = breakpointCount > 0, watch = watching, log = logpointCount > 0;
+        boolean stops = checkBreakpoints || watch || log; // every line has to pass through this loop
+        boolean fuse = fusionEnabled && !stops; // a breakpoint or logpoint could sit on the second line of a pair
+        boolean bulk = loopIdiomsEnabled && !stops; // or inside a loop, and bulk loops skip the watch probes
+        // other tiers can't stop at a breakpoint or watch memory, and rely on the verifier for direct addresses
+        boolean promote = (closureEnabled || compilationEnabled) && !stops && !checkDirectAddresses;
+        int promoteThreshold = Math.min((closureEnabled) ? closureThreshold : Integer.MAX_VALUE, (compilationEnabled) ? compileThreshold : Integer.MAX_VALUE);
+        boolean detect = loopDetectionEnabled;
+        int window = 0; // backward branches left to sample in the interpreter before going back to a faster tier
+        detectionScale = 0;
+        long interpreted = 0;
+        boolean faulted = false;
+        resetLastAccessed();
+        triggeredWatchpoint = null;
+        tracking = false;
+        if (monitor != null) {
+            publish(StateMonitorReader.RUNNING, 0);
+            monitorCountdown = MONITOR_INTERVAL;
+        }
+
+        try {
+            if (promote && promoteThreshold <= 0 && !programComplete()) {
+                if (runPromoted(-1))
+                    return true;
+                if (budgeted && budgetExhausted(0, true))
+                    return false;
+                if (sliceEnded)
+                    window = sampleWindow();
+            }
+
+            if (log && lastInstructionPointer == -1 && logpointSetOnRow(instructionPointer))
+                log(instructionPointer); // arriving at the first line
+
+            while (!programComplete()) {
+                long bulkCount;
+                if (bulk && loopIdioms.isHead(instructionPointer) && (bulkCount = runLoopIdiom(instructionPointer, interpreted)) >= 0)
+                    interpreted += bulkCount;
+                else if (fuse && program.getSuperinstruction(instructionPointer) != Opcode.NONE) {
+                    int line = instructionPointer;
+                    interpreted += 2;
+                    try {
+                        executeSuperinstruction(line);
+                    } catch (Exception e) {
+                        if (lastInstructionPointer == line)
+                            interpreted--; // the first half faulted, the second never ran
+                        throw e;
+                    }
+                } else {
+                    interpreted++;
+                    try {
+                        execute(instructionPointer);
+                    } catch (ProgramFault f) {
+                        if (f.getFault() == Fault.MISSING_LINE)
+                            interpreted--; // a line without a card never ran, as in the other tiers
+                        throw f;
+                    }
+                }
+
+                // a raw branch can go past the program capacity, the next execute reports the missing line
+                if (log && logpointSetOnRow(instructionPointer))
+                    log(instructionPointer);
+                if (checkBreakpoints && breakpointSetOnRow(instructionPointer) && breakpoints[instructionPointer].trigger(_data))
+                    return false;
+                if (watch && triggeredWatchpoint != null)
+                    return false;
+
+                // loops are only sampled, and programs only get hot, at backward branches
+                boolean backward = instructionPointer <= lastInstructionPointer;
+                if (backward && detect && loopDetector.sample(_data, highVersion(), instructionPointer, inputPointer))
+                    throw infiniteLoop();
+
+                if (backward && budgeted && budgetExhausted(interpreted, clockDue()))
+                    return false;
+                if (backward && monitor != null && --monitorCountdown == 0) {
+                    publish(StateMonitorReader.RUNNING, interpreted);
+                    monitorCountdown = MONITOR_INTERVAL;
+                }
+
+                if (backward && window > 0)
+                    window--; // still sampling, the program goes back to the faster tier afterwards
+                else if (promote && backward && ++backwardBranchCounts[lastInstructionPointer] >= promoteThreshold) {
+                    tierReport.counts[Tier.INTERPRETER.ordinal()] += interpreted; // the budgets handed to the tier count them
+                    interpreted = 0;
+                    if (runPromoted(lastInstructionPointer))
+                        return true;
+
+                    if (budgeted && budgetExhausted(0, true))
+                        return false;
+                    if (sliceEnded)
+                        window = sampleWindow();
+                    else
+                        promote = false; // neither tier is available, finish in the interpreter
+                }
+            }
+        } catch (Exception e) {
+            faulted = true;
+            throw e;
+        } finally {
+            tracking = true;
+            tierReport.counts[Tier.INTERPRETER.ordinal()] += interpreted;
+            runNanos += System.nanoTime() - runStarted;
+
+            writtenStale = true; // updated in one pass when the debugger asks for it
+            if (monitor != null)
+                publish(faulted ? StateMonitorReader.FAULTED : programComplete() ? StateMonitorReader.HALTED : StateMonitorReader.STOPPED, 0);
+        }
+
+        return true;
     }
 
-    public ResultData runNextInstruction() throws Exception {
+    public void resetBudgets() { // start counting the budgets over, running after a budget stopped the program does this too
+        exhaustedBudget = null;
+        instructionBase = tierReport.getTotalInstructionCount();
+        printBase = printCount;
+        runNanos = 0;
+        clockCountdown = 0;
+    }
+
+    private void updateBudgets() {
+        budgeted = instructionLimit > 0 || timeLimit > 0 || outputLimit > 0;
+    }
+
+    private boolean budgetExhausted(long pending, boolean readClock) { // at a backward branch, pending instructions aren't in the tier report yet
+        if (instructionLimit > 0 && tierReport.getTotalInstructionCount() + pending - instructionBase >= instructionLimit)
+            exhaustedBudget = Budget.INSTRUCTIONS;
+        else if (timeLimit > 0 && readClock && runNanos + System.nanoTime() - runStarted >= timeLimit * 1000000L)
+            exhaustedBudget = Budget.TIME;
+        else if (outputLimit > 0 && printCount - printBase >= outputLimit)
+            exhaustedBudget = Budget.OUTPUT;
+
+        return exhaustedBudget != null;
+    }
+
+    private boolean clockDue() { // reading the clock on every backward branch would cost more than the branch
+        if (--clockCountdown > 0)
+            return false;
+
+        clockCountdown = CompiledProgram.CLOCK_INTERVAL;
+        return true;
+    }
+
+    private int sampleWindow() { // after a faster tier paused, consecutive samples start over
+        loopDetector.restart();
+        int window = DETECTION_WINDOW << detectionScale;
+        detectionScale = Math.min(detectionScale + 1, MAX_DETECTION_SCALE);
+        return window;
+    }
+
+    private void publish(int state, long pending) { // pending instructions aren't in the tier report yet
+        monitor.publish(state, _data, instructionPointer, inputPointer, tierReport.getTotalInstructionCount() + pending);
+    }
+
+    private long highVersion() { return (highMemory == null) ? 0 : highMemory.getVersion(); }
+
+    private ProgramFault infiniteLoop() {
+        return locate(new ProgramFault(Fault.INFINITE_LOOP, lastInstructionPointer));
+    }
+
+    private long runLoopIdiom(int head, long pending) { // instructions run by a loop in bulk, or -1 if it has to run line by line
+        int tail = loopIdioms.getTail(head);
+        if (lastInstructionPointer == tail)
+            return -1; // back around from the tail, so the bulk run was already turned down on the way in
+
+        // a loop that could outrun the instruction limit runs line by line, so the limit stops it at a backward branch
+        long budget = (instructionLimit > 0) ? instructionLimit - (tierReport.getTotalInstructionCount() + pending - instructionBase) : Long.MAX_VALUE;
+        long count = loopIdioms.run(_data, head, budget);
+        if (count >= 0) {
+            advance(tail); // the +7 on the last iteration fell through
+            loopDetector.invalidate();
+        }
+
+        return count;
+    }
+
+    private boolean runPromoted(int line) throws Exception { // finish the run in a faster tier, false if there isn't one or it paused for sampling
+        sliceEnded = false;
+        int hotness = (line == -1) ? 0 : backwardBranchCounts[line];
+        if (tierReport.promotedTier == null)
+            tierReport.promotionLine = line;
+
+        if (closureEnabled && !(compilationEnabled && hotness >= compileThreshold && compile())) {
+            if (closureProgram == null)
+                closureProgram = ClosureProgram.compile(program, programSize);
+
+            closureProgram.backwardBranchCounts = backwardBranchCounts;
+            closureProgram.promoteThreshold = (compilationEnabled && !compilationFailed) ? compileThreshold : Integer.MAX_VALUE;
+            tierReport.promotedTier = Tier.CLOSURE;
+
+            if (runTier(closureProgram, Tier.CLOSURE))
+                return true;
+            if (sliceEnded || budgeted && budgetExhausted(0, true))
+                return false;
+
+            // paused on a branch that's hot enough to compile
+            if (!compile()) {
+                closureProgram.promoteThreshold = Integer.MAX_VALUE;
+                return runTier(closureProgram, Tier.CLOSURE);
+            }
+        } else if (!(compilationEnabled && compile()))
+            return false;
+
+        tierReport.promotedTier = Tier.COMPILED;
+        return runTier(compiledProgram, Tier.COMPILED);
+    }
+
+    private boolean compile() { // compiled once per loaded program, the interpreter is used if it can't be
+        if (compiledProgram == null && !compilationFailed) {
+            compiledProgram = ProgramCompiler.compile(program, programSize);
+            compilationFailed = compiledProgram == null;
+        }
+
+        return compiledProgram != null;
+    }
+
+    private boolean runTier(CompiledProgram code, Tier tier) throws Exception { // returns false if the code paused
+        code.input = _input;
+        code.inputPointer = inputPointer;
+        code.outputListener = outputListener;
+        code.loops = (loopIdiomsEnabled) ? loopIdioms : null;
+        code.highMemory = highMemory;
+        code.memoryWords = profile.getMemoryWords();
+        code.instructionCount = 0;
+        // the monitor also needs the tier to pause now and then, so the interpreter can publish
+        int slice = (loopDetectionEnabled || monitor != null) ? DETECTION_SLICE << detectionScale : Integer.MAX_VALUE;
+        code.backwardBranchBudget = (budgeted) ? 1 : slice;
+        code.sliceBudget = slice;
+        code.budgeted = budgeted;
+        code.printCount = 0;
+        code.instructionBudget = (instructionLimit > 0) ? instructionLimit - (tierReport.getTotalInstructionCount() - instructionBase) : Long.MAX_VALUE;
+        code.printBudget = (outputLimit > 0) ? outputLimit - (printCount - printBase) : Long.MAX_VALUE;
+        code.timed = timeLimit > 0;
+        code.deadline = runStarted + timeLimit * 1000000L - runNanos;
+
+        try {
+            int line = code.execute(_data, instructionPointer);
+            if (line == CompiledProgram.PAUSED) {
+                lastInstructionPointer = code.lastLine;
+                instructionPointer = code.nextLine;
+                sliceEnded = code.sliceEnded();
+                if (monitor != null)
+                    publish(StateMonitorReader.RUNNING, code.instructionCount);
+                return false;
+            }
+
+            advance(line);
+            return true;
+        } catch (ProgramFault f) {
+            if (f.getFault() != Fault.MISSING_LINE || code.lastLine != -1)
+                lastInstructionPointer = code.lastLine;
+            instructionPointer = code.nextLine;
+            throw locate(f); // same as the interpreter, no line information for a missing card
+        } catch (Exception e) {
+            lastInstructionPointer = code.lastLine;
+            instructionPointer = code.nextLine;
+            throw new Exception(e.getMessage() + lineSuffix(lastInstructionPointer));
+        } finally {
+            inputPointer = code.inputPointer;
+            printCount += code.printCount;
+            tierReport.counts[tier.ordinal()] += code.instructionCount;
+            loopDetector.invalidate(); // the tier wrote memory directly
+        }
+    }
+
+    private void resetLastAccessed() {
         lastWrittenDataLocation = -1;
         lastReadInputCard = -1;
         lastReadProgramLabel = -1;
         lastWrittenDataSymbol = -1;
-        lastReadDataSymbolSet.clear();
-        boolean positive, continueProgram = true;
-        Integer op, opn1, opn2, opn3;
-        long[] result = null;
-        Instruction instruction = null;
+        lastReadDataSymbolCount = 0;
+    }
 
+    private void execute(int line) throws Exception {
         try {
-            instruction = getProgramInstruction(instructionPointer);
-            positive = instruction.getPositive();
-            op = instruction.getOp();
-            opn1 = instruction.getOpn1();
-            opn2 = instruction.getOpn2();
-            opn3 = instruction.getOpn3();
-            lastInstructionPointer = instructionPointer;
+            int opcode = program.getOpcode(line);
+            if (opcode == Opcode.NONE)
+                throw new ProgramFault(Fault.MISSING_LINE, line);
+
+            if (tracking)
+                event.begin(line, opcode, program.opn1[line], program.opn2[line], program.opn3[line]);
+
+            lastInstructionPointer = line;
             instructionPointer++;
 
-            switch (op) {
-                case 0:
-                default:
-                    if (positive) result = opMove(opn1, opn2, opn3);
-                    else throw new Exception("Called unsupported operation -0");
-                    break;
-                case 1:
-                    if (positive) result = opAdd(opn1, opn2, opn3);
-                    else result = opSubtract(opn1, opn2, opn3);
-                    break;
-                case 2:
-                    if (positive) result = opMultiply(opn1, opn2, opn3);
-                    else result = opDivide(opn1, opn2, opn3);
-                    break;
-                case 3:
-                    if (positive) result = opSquare(opn1, opn2, opn3);
-                    else result = opRoot(opn1, opn2, opn3);
-                    break;
-                case 4:
-                    if (positive) result = opEqual(opn1, opn2, opn3);
-                    else result = opUnequal(opn1, opn2, opn3);
-                    break;
-                case 5:
-                    if (positive) result = opGreaterThanEqual(opn1, opn2, opn3);
-                    else result = opLessThan(opn1, opn2, opn3);
-                    break;
-                case 6:
-                    if (positive) result = opFromArray(opn1, opn2, opn3);
-                    else result = opToArray(opn1, opn2, opn3);
-                    break;
-                case 7:
-                    if (positive)
-                        result = opIncrementAndTest(opn1, opn2, opn3);
-                    else if (!labelsEnabled)
-                        throw new Exception("Called unsupported operation -7");
+            switch (opcode) {
+                case Opcode.MOVE: opMove(line); break;
+                case Opcode.UNSUPPORTED_0: throw new ProgramFault(Fault.UNSUPPORTED_OPERATION, 0);
+                case Opcode.ADD: opAdd(line); break;
+                case Opcode.SUBTRACT: opSubtract(line); break;
+                case Opcode.MULTIPLY: opMultiply(line); break;
+                case Opcode.DIVIDE: opDivide(line); break;
+                case Opcode.SQUARE: opSquare(line); break;
+                case Opcode.ROOT: opRoot(line); break;
+                case Opcode.EQUAL: opEqual(line); break;
+                case Opcode.UNEQUAL: opUnequal(line); break;
+                case Opcode.GREATER_THAN_EQUAL: opGreaterThanEqual(line); break;
+                case Opcode.LESS_THAN: opLessThan(line); break;
+                case Opcode.FROM_ARRAY: opFromArray(line); break;
+                case Opcode.TO_ARRAY: opToArray(line); break;
+                case Opcode.INCREMENT_AND_TEST: opIncrementAndTest(line); break;
+                case Opcode.LABEL:
+                    if (!labelsEnabled)
+                        throw new ProgramFault(Fault.UNSUPPORTED_OPERATION, 7);
 
                     break; // nothing special when arriving at a valid label
-                case 8:
-                    if (positive) result = opRead(opn1, opn2, opn3);
-                    else result = opPrint(opn1, opn2, opn3);
-                    break;
-                case 9:
-                    if (positive) continueProgram = false;
-                    else throw new Exception("Called unsupported operation -9");
+                case Opcode.READ: opRead(line); break;
+                case Opcode.PRINT: opPrint(line); break;
+                case Opcode.END:
+                case Opcode.HALT: break;
+                case Opcode.UNSUPPORTED_9: throw new ProgramFault(Fault.UNSUPPORTED_OPERATION, 9);
             }
 
-        } catch (UnsupportedOperationException e) {
-            throw e; // special error case where the " on line ..." addition wouldn't make sense
+        } catch (ProgramFault f) {
+            throw locate(f); // a missing line stays without the " on line ..." addition, it wouldn't make sense
         } catch (Exception e){
-            throw new Exception(e.getMessage() + " (line " + programLineMap.get(lastInstructionPointer) + " of " + fileName + ")");
+            throw new Exception(e.getMessage() + lineSuffix(lastInstructionPointer));
         }
+    }
 
-        return new ResultData(instruction, result, continueProgram);
+    private void executeSuperinstruction(int line) throws Exception { // runs two lines in one dispatch
+        try {
+            lastInstructionPointer = line;
+            instructionPointer = line + 1;
+
+            switch (program.fused[line]) {
+                case Opcode.FROM_ARRAY_COMPARE:
+                    opFromArray(line);
+                    advance(line + 1);
+
+                    switch (program.opcodes[line + 1]) {
+                        case Opcode.EQUAL: opEqual(line + 1); break;
+                        case Opcode.UNEQUAL: opUnequal(line + 1); break;
+                        case Opcode.GREATER_THAN_EQUAL: opGreaterThanEqual(line + 1); break;
+                        case Opcode.LESS_THAN: opLessThan(line + 1); break;
+                    }
+                    break;
+                case Opcode.READ_TO_ARRAY:
+                    opRead(line);
+                    advance(line + 1);
+                    opToArray(line + 1);
+                    break;
+                case Opcode.ADD_INCREMENT_AND_TEST:
+                    opAdd(line);
+                    advance(line + 1);
+                    opIncrementAndTest(line + 1);
+                    break;
+            }
+        } catch (ProgramFault f) { // the line of the half that failed is reported
+            throw locate(f);
+        } catch (Exception e) {
+            throw new Exception(e.getMessage() + lineSuffix(lastInstructionPointer));
+        }
     }
 
-    public static String getResultOutput(ResultData resultData) {
-        Instruction inst = resultData.getInstruction();
-        long[] result = resultData.getResult();
+    private ProgramFault locate(ProgramFault fault) {
+        return fault.locate(lastInstructionPointer, fileLines, fileName);
+    }
 
-        switch (inst.getOp()) {
-            case 0:
-                if (inst.getPositive()) { // move
-                    return("Move " + result[0] + " into " + inst.getOpn3());
-                }
-                break;
-            case 1:
-                if (inst.getPositive()) { // add
-                    return(result[0] + " + " + result[1] + " = " + result[2] + " into " + inst.getOpn3());
-                } else { // subtract
-                    return(result[0] + " - " + result[1] + " = " + result[2] + " into " + inst.getOpn3());
-                }
-            case 2:
-                if (inst.getPositive()) { // multiply
-                    return(result[0] + " * " + result[1] + " = " + result[2] + " into " + inst.getOpn3());
-                } else { // divide
-                    return(result[0] + " / " + result[1] + " = " + result[2] + " into " + inst.getOpn3());
-                }
-            case 3:
-                if (inst.getPositive()) { // square
-                    return(result[0] + " squared = " + result[1] + " into " + inst.getOpn3());
-                } else { // square root
-                    return("Square root of " + result[0] + " = " + result[1] + " into " + inst.getOpn3());
-                }
-            case 4:
-                if (inst.getPositive()) { // equal
-                    return(result[0] + " == " + result[1] + " is " + ((result[2] == 1) ? "true:" : "false: don't") + " go to "
-                            + ((result[3] == Long.MIN_VALUE) ? "line " + inst.getOpn3() : "label " + inst.getOpn3() + " (line " + result[3] + ")"));
-                } else { // unequal
-                    return(result[0] + " != " + result[1] + " is " + ((result[2] == 1) ? "true:" : "false: don't") + " go to "
-                            + ((result[3] == Long.MIN_VALUE) ? "line " + inst.getOpn3() : "label " + inst.getOpn3() + " (line " + result[3] + ")"));
-                }
-            case 5:
-                if (inst.getPositive()) { // greater than or equal to
-                    return(result[0] + " >= " + result[1] + " is " + ((result[2] == 1) ? "true:" : "false: don't") + " go to "
-                            + ((result[3] == Long.MIN_VALUE) ? "line " + inst.getOpn3() : "label " + inst.getOpn3() + " (line " + result[3] + ")"));
-                } else { // less than
-                    return(result[0] + " < " + result[1] + " is " + ((result[2] == 1) ? "true:" : "false: don't") + " go to "
-                            + ((result[3] == Long.MIN_VALUE) ? "line " + inst.getOpn3() : "label " + inst.getOpn3() + " (line " + result[3] + ")"));
-                }
-            case 6:
-                if (inst.getPositive()) { // from array
-                    return("Move " + result[2] + " from " + inst.getOpn1() + "[" + result[0] + "] into " + inst.getOpn3());
-                } else { // to array
-                    return("Move " + result[0] + " from " + inst.getOpn1() + " into " + inst.getOpn2() + "[" + result[1] + "]");
-                }
-            case 7:
-                if (inst.getPositive()) { // increment and test
-                    return("Increment " + inst.getOpn1() + " and test: "
-                            + result[0] + " < " + result[1] + " is " + ((result[2] == 1) ? "true:" : "false: don't") + " go to "
-                            + ((result[3] == Long.MIN_VALUE) ? "line " + inst.getOpn3() : "label " + inst.getOpn3() + " (line " + result[3] + ")"));
-                } else { // arrived at label
-                    return ("--- Label " + inst.getOpn1() + " ---");
-                }
-            case 8:
-                if (inst.getPositive()) { // read
-                    return("Read " + result[0] + " into " + inst.getOpn3());
-                } else { // print
-                    return("Print " + result[0] + " from " + inst.getOpn1());
-                }
-            case 9:
-                if (inst.getPositive()) { // program end
-                    return("End program");
-                }
-                break;
+    private void advance(int line) {
+        lastInstructionPointer = line;
+        instructionPointer = line + 1;
+    }
+
+    public static String getResultOutput(StepEvent event) {
+        String opn1 = Integer.toString(event.getOpn1()), opn2 = Integer.toString(event.getOpn2()), opn3 = Integer.toString(event.getOpn3());
+        String branch = ((event.getBranchTaken()) ? "true:" : "false: don't") + " go to "
+                + ((event.getBranchLine() == -1) ? "line " + opn3 : "label " + opn3 + " (line " + event.getBranchLine() + ")");
+
+        switch (event.getOpcode()) {
+            case Opcode.MOVE:
+                return("Move " + event.getResult() + " into " + opn3);
+            case Opcode.ADD:
+                return(event.getValue1() + " + " + event.getValue2() + " = " + event.getResult() + " into " + opn3);
+            case Opcode.SUBTRACT:
+                return(event.getValue1() + " - " + event.getValue2() + " = " + event.getResult() + " into " + opn3);
+            case Opcode.MULTIPLY:
+                return(event.getValue1() + " * " + event.getValue2() + " = " + event.getResult() + " into " + opn3);
+            case Opcode.DIVIDE:
+                return(event.getValue1() + " / " + event.getValue2() + " = " + event.getResult() + " into " + opn3);
+            case Opcode.SQUARE:
+                return(event.getValue1() + " squared = " + event.getResult() + " into " + opn3);
+            case Opcode.ROOT:
+                return("Square root of " + event.getValue1() + " = " + event.getResult() + " into " + opn3);
+            case Opcode.EQUAL:
+                return(event.getValue1() + " == " + event.getValue2() + " is " + branch);
+            case Opcode.UNEQUAL:
+                return(event.getValue1() + " != " + event.getValue2() + " is " + branch);
+            case Opcode.GREATER_THAN_EQUAL:
+                return(event.getValue1() + " >= " + event.getValue2() + " is " + branch);
+            case Opcode.LESS_THAN:
+                return(event.getValue1() + " < " + event.getValue2() + " is " + branch);
+            case Opcode.FROM_ARRAY:
+                return("Move " + event.getResult() + " from " + opn1 + "[" + event.getValue2() + "] into " + opn3);
+            case Opcode.TO_ARRAY:
+                return("Move " + event.getResult() + " from " + opn1 + " into " + opn2 + "[" + event.getValue3() + "]");
+            case Opcode.INCREMENT_AND_TEST:
+                return("Increment " + opn1 + " and test: " + event.getValue1() + " < " + event.getValue2() + " is " + branch);
+            case Opcode.LABEL:
+                return ("--- Label " + opn1 + " ---");
+            case Opcode.READ:
+                return("Read " + event.getResult() + " into " + opn3);
+            case Opcode.PRINT:
+                return("Print " + event.getValue1() + " from " + opn1);
+            case Opcode.END:
+            case Opcode.HALT:
+                return("End program");
         }
         return "";
     }
 
-    private long setArithResult(long result, int index) throws Exception { // enforce numeric size boundaries
-        if (result > 9999999999L)
-            throw new Exception("Program memory overflow: the result (" + result + ") exceeds the maximum value of 9999999999");
-        else if (result < -9999999999L)
-            throw new Exception("Program memory underflow: the result (" + result + ") exceeds the minimum value of -9999999999");
-        else
-            setData(result, index);
+    private long setArithResult(long result, int line) throws ProgramFault { // enforce numeric size boundaries, unless proven at load
+        if (overflowChecked(line)) {
+            if (result > 9999999999L)
+                throw new ProgramFault(Fault.OVERFLOW, result, 1);
+            else if (result < -9999999999L)
+                throw new ProgramFault(Fault.UNDERFLOW, result, 1);
+        }
 
+        setData(result, program.addr3[line]);
         return result;
     }
 
-    // Operation methods
-    long[] opMove(int opn1, int opn2, int opn3) throws Exception // +0 put data[opn1] in opn3
-    {
-        long[] returnArray = new long[]{getData(opn1)};
-        setData(getData(opn1), opn3);
-        return returnArray;
+    static long multiply(long a, long b) throws ProgramFault { // exact product, the range check reports it even past 64 bits
+        long result = a * b;
+        if (((Math.abs(a) | Math.abs(b)) >>> 31) != 0 && a != 0 && (result / a != b || (a == -1 && b == Long.MIN_VALUE)))
+            throw new ProgramFault(((a > 0) == (b > 0)) ? Fault.OVERFLOW : Fault.UNDERFLOW, a, b); // formatted with the exact product
+
+        return result;
     }
 
-    long[] opAdd(int opn1, int opn2, int opn3) throws Exception // +1 add data[opn1] to data[opn2] and put in opn3
-    {
-        long result = getData(opn1) + getData(opn2);
-        long[] returnArray = new long[]{getData(opn1), getData(opn2), result};
-        setArithResult(result, opn3);
-        return returnArray;
+    private boolean overflowChecked(int line) {
+        return (program.verified[line] & ProgramVerifier.NO_OVERFLOW) == 0;
     }
 
-    long[] opSubtract(int opn1, int opn2, int opn3) throws Exception // -1 subtract data[opn2] from data[opn1] and put in opn3
-    {
-        long result = getData(opn1) - getData(opn2);
-        long[] returnArray = new long[]{getData(opn1), getData(opn2), result};
-        setArithResult(result, opn3);
-        return returnArray;
+    private void compare(int line, boolean taken) { // take the branch of a compare instruction if the test passed
+        if (taken) {
+            if (tracking && labelsEnabled)
+                lastReadProgramLabel = program.opn3[line];
+
+            instructionPointer = program.target[line];
+        }
+
+        event.branchTaken = taken;
+        event.branchLine = (labelsEnabled) ? program.target[line] : -1;
     }
 
-    long[] opMultiply(int opn1, int opn2, int opn3) throws Exception // +2 multiply data[opn1] by data[opn2] and put in opn3
+    // Operation methods (operate on the decoded instruction at the given line)
+    void opMove(int line) throws Exception // +0 put data[opn1] in opn3
     {
-        long result = getData(opn1) * getData(opn2);
-        long[] returnArray = new long[]{getData(opn1), getData(opn2), result};
-        setArithResult(result, opn3);
-        return returnArray;
+        long value = getData(program.addr1[line]);
+        setData(value, program.addr3[line]);
+        event.value1 = event.result = value;
     }
 
-    long[] opDivide(int opn1, int opn2, int opn3) throws Exception // -2 divide data[opn1] by data[opn2] and put in opn3
+    void opAdd(int line) throws Exception // +1 add data[opn1] to data[opn2] and put in opn3
     {
-        long result = getData(opn1) / getData(opn2);
-        long[] returnArray = new long[]{getData(opn1), getData(opn2), result};
-        setArithResult(result, opn3);
-        return returnArray;
+        long a = event.value1 = getData(program.addr1[line]), b = event.value2 = getData(program.addr2[line]);
+        event.result = setArithResult(a + b, line);
     }
 
-    long[] opSquare(int opn1, int opn2, int opn3) throws Exception // +3 square data[opn1] and put in opn3
+    void opSubtract(int line) throws Exception // -1 subtract data[opn2] from data[opn1] and put in opn3
     {
-        long result = getData(opn1) * getData(opn1);
-        long[] returnArray = new long[]{getData(opn1), result};
-        setArithResult(result, opn3);
-        return returnArray;
+        long a = event.value1 = getData(program.addr1[line]), b = event.value2 = getData(program.addr2[line]);
+        event.result = setArithResult(a - b, line);
     }
 
-    long[] opRoot(int opn1, int opn2, int opn3) throws Exception // -3 square root data[opn1] and put in opn3
+    void opMultiply(int line) throws Exception // +2 multiply data[opn1] by data[opn2] and put in opn3
     {
-        long result = (long)Math.sqrt(getData(opn1));
-        long[] returnArray = new long[]{getData(opn1), result};
-        setArithResult(result, opn3);
-        return returnArray;
+        long a = event.value1 = getData(program.addr1[line]), b = event.value2 = getData(program.addr2[line]);
+        event.result = setArithResult((overflowChecked(line)) ? multiply(a, b) : a * b, line);
     }
 
-    long[] opEqual(int opn1, int opn2, int opn3) throws Exception // +4 if data[opn1] == data[opn2] go to opn3
+    void opDivide(int line) throws Exception // -2 divide data[opn1] by data[opn2] and put in opn3
     {
-        long result;
-        if (getData(opn1) == getData(opn2)) {
-            if (labelsEnabled) {
-                if (programLabelMap.containsKey(opn3)) {
-                    lastReadProgramLabel = opn3;
-                    instructionPointer = programLabelMap.get(opn3);
-                } else
-                    throw new Exception("Program label " + opn3 + " has not been defined");
-            } else
-              instructionPointer = opn3;
-
-            result = 1L;
-        } else
-            result = 0L;
+        long a = event.value1 = getData(program.addr1[line]), b = event.value2 = getData(program.addr2[line]);
+        if (b == 0)
+            throw new ProgramFault(Fault.DIVIDE_BY_ZERO, a);
 
-        return new long[]{getData(opn1), getData(opn2), result, ((labelsEnabled && programLabelMap.containsKey(opn3)) ?  programLabelMap.get(opn3) : Long.MIN_VALUE)};
+        event.result = setArithResult(a / b, line);
     }
 
-    long[] opUnequal(int opn1, int opn2, int opn3) throws Exception // -4 if data[opn1] != data[opn2] goto opn3
+    void opSquare(int line) throws Exception // +3 square data[opn1] and put in opn3
     {
-        long result;
-        if (getData(opn1) != getData(opn2)) {
-            if (labelsEnabled) {
-                if (programLabelMap.containsKey(opn3)) {
-                    lastReadProgramLabel = opn3;
-                    instructionPointer = programLabelMap.get(opn3);
-                } else
-                    throw new Exception("Program label " + opn3 + " has not been defined");
-            } else
-                instructionPointer = opn3;
-
-            result = 1L;
-        } else
-            result = 0L;
-
-        return new long[]{getData(opn1), getData(opn2), result, ((labelsEnabled && programLabelMap.containsKey(opn3)) ?  programLabelMap.get(opn3) : Long.MIN_VALUE)};
+        long a = event.value1 = getData(program.addr1[line]);
+        event.result = setArithResult((overflowChecked(line)) ? multiply(a, a) : a * a, line);
     }
 
-    long[] opGreaterThanEqual(int opn1, int opn2, int opn3) throws Exception // +5 if data[opn1] >= data[opn2] goto opn3
+    void opRoot(int line) throws Exception // -3 square root data[opn1] and put in opn3
     {
-        long result;
-        if (getData(opn1) >= getData(opn2)) {
-            if (labelsEnabled) {
-                if (programLabelMap.containsKey(opn3)) {
-                    lastReadProgramLabel = opn3;
-                    instructionPointer = programLabelMap.get(opn3);
-                } else
-                    throw new Exception("Program label " + opn3 + " has not been defined");
-            } else
-                instructionPointer = opn3;
-
-            result = 1L;
-        } else
-            result = 0L;
+        long a = event.value1 = getData(program.addr1[line]);
+        event.result = setArithResult((long)Math.sqrt(a), line);
+    }
 
-        return new long[]{getData(opn1), getData(opn2), result, ((labelsEnabled && programLabelMap.containsKey(opn3)) ?  programLabelMap.get(opn3) : Long.MIN_VALUE)};
+    void opEqual(int line) throws Exception // +4 if data[opn1] == data[opn2] go to opn3
+    {
+        long a = event.value1 = getData(program.addr1[line]), b = event.value2 = getData(program.addr2[line]);
+        compare(line, a == b);
     }
 
-    long[] opLessThan(int opn1, int opn2, int opn3) throws Exception // -5 if data[opn1] < data[opn3] goto opn3
+    void opUnequal(int line) throws Exception // -4 if data[opn1] != data[opn2] goto opn3
     {
-        long result;
-        if (getData(opn1) < getData(opn2)) {
-            if (labelsEnabled) {
-                if (programLabelMap.containsKey(opn3)) {
-                    lastReadProgramLabel = opn3;
-                    instructionPointer = programLabelMap.get(opn3);
-                } else
-                    throw new Exception("Program label " + opn3 + " has not been defined");
-            } else
-                instructionPointer = opn3;
-
-            result = 1L;
-        } else
-            result = 0L;
+        long a = event.value1 = getData(program.addr1[line]), b = event.value2 = getData(program.addr2[line]);
+        compare(line, a != b);
+    }
 
-        return new long[]{getData(opn1), getData(opn2), result, ((labelsEnabled && programLabelMap.containsKey(opn3)) ?  programLabelMap.get(opn3) : Long.MIN_VALUE)};
+    void opGreaterThanEqual(int line) throws Exception // +5 if data[opn1] >= data[opn2] goto opn3
+    {
+        long a = event.value1 = getData(program.addr1[line]), b = event.value2 = getData(program.addr2[line]);
+        compare(line, a >= b);
     }
 
-    long[] opFromArray(int opn1, int opn2, int opn3) throws Exception // +6 opn1[opn2] -> opn3
+    void opLessThan(int line) throws Exception // -5 if data[opn1] < data[opn3] goto opn3
     {
-        long result;
-        result = getData(opn1, (int) getData(opn2));
-        long[] returnArray = new long[]{getData(opn2), opn1 + getData(opn2), result};
-        setData(result, opn3);
-        return returnArray;
+        long a = event.value1 = getData(program.addr1[line]), b = event.value2 = getData(program.addr2[line]);
+        compare(line, a < b);
     }
 
-    long[] opToArray(int opn1, int opn2, int opn3) throws Exception // -6 opn1 -> opn2[opn3]
+    void opFromArray(int line) throws Exception // +6 opn1[opn2] -> opn3
     {
-        long[] returnArray = new long[]{getData(opn1), getData(opn3), opn2 + getData(opn3)};
-        setData(getData(opn1), opn2, (int) getData(opn3));
-        return returnArray;
+        long index = event.value2 = getData(program.addr2[line]);
+        long value = event.value1 = event.result = getData(program.addr1[line], (int) index, program.bound[line]);
+        setData(value, program.addr3[line]);
     }
 
-    long[] opIncrementAndTest(int opn1, int opn2, int opn3) throws Exception // +7 auto-increment opn1, then if opn1 is less than opn2, goto opn3
+    void opToArray(int line) throws Exception // -6 opn1 -> opn2[opn3]
     {
-        long result;
-        setData(getData(opn1) + 1, opn1);
-        if (getData(opn1) < getData(opn2)) {
-            if (labelsEnabled) {
-                if (programLabelMap.containsKey(opn3)) {
-                    lastReadProgramLabel = opn3;
-                    instructionPointer = programLabelMap.get(opn3);
-                } else
-                    throw new Exception("Program label " + opn3 + " has not been defined");
-            } else
-                instructionPointer = opn3;
-
-            result = 1L;
-        } else
-            result = 0L;
+        long value = event.value1 = event.result = getData(program.addr1[line]);
+        long index = event.value3 = getData(program.addr3[line]);
+        setData(value, program.addr2[line], (int) index, program.bound[line]);
+    }
 
-        return new long[]{getData(opn1), getData(opn2), result, ((labelsEnabled && programLabelMap.containsKey(opn3)) ?  programLabelMap.get(opn3) : Long.MIN_VALUE)};
+    void opIncrementAndTest(int line) throws Exception // +7 auto-increment opn1, then if opn1 is less than opn2, goto opn3
+    {
+        int counter = program.addr1[line];
+        setData(getData(counter) + 1, counter);
+        long a = event.value1 = event.result = _data[counter], b = event.value2 = getData(program.addr2[line]); // counter was just written
+        compare(line, a < b);
     }
 
-    long[] opRead(int opn1, int opn2, int opn3) throws Exception // +8 read from card into opn3
+    void opRead(int line) throws Exception // +8 read from card into opn3
     {
-        long result;
         if (_input[inputPointer] != Long.MIN_VALUE) {
-            result = _input[inputPointer];
-            lastReadInputCard = inputPointer;
+            long value = event.result = _input[inputPointer];
+            if (tracking)
+                lastReadInputCard = inputPointer;
+
             inputPointer++;
-            setData(result, opn3);
+            setData(value, program.addr3[line]);
         }  else
-            throw new Exception("Attempted to read beyond bounds of input cards");
-
-        return new long[]{result};
+            throw new ProgramFault(Fault.INPUT_EXHAUSTED, inputPointer);
     }
 
-    long[] opPrint(int opn1, int opn2, int opn3) throws Exception // -8 print value of opn1
+    void opPrint(int line) throws Exception // -8 print value of opn1
     {
-        return new long[]{getData(opn1)};
+        long value = event.value1 = getData(program.addr1[line]);
+        printCount++;
+        if (outputListener != null)
+            outputListener.valuePrinted(value);
     }
-}
\ No newline at end of file
+}
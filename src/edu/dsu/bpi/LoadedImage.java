@@ -0,0 +1,38 @@
+package edu.dsu.bpi;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Data memory, input deck and written locations right after a program was loaded, so resetting the
+ * program copies them back instead of parsing every card again. Never changed once it's taken.
+ * Loading only writes the direct words, so paged memory resets to empty.
+ */
+final class LoadedImage {
+    private final long[] data;
+    private final long[] input; // only the loaded cards, editInput can add one past them
+    private final MemoryBits written;
+
+    LoadedImage(long[] data, long[] input, int inputSize, MemoryBits written) {
+        this.data = data.clone();
+        this.input = new long[inputSize];
+        System.arraycopy(input, 0, this.input, 0, inputSize);
+        this.written = new MemoryBits(written.size());
+        this.written.copyFrom(written);
+    }
+
+    void write(Checkpoint.Writer out) throws IOException {
+        out.putRuns(data, null);
+        out.putInt(input.length);
+        out.putLongs(input, input.length);
+    }
+
+    int restore(long[] data, long[] input, int inputSize, MemoryBits written) { // the input size as loaded
+        System.arraycopy(this.data, 0, data, 0, this.data.length);
+        System.arraycopy(this.input, 0, input, 0, this.input.length);
+        if (inputSize > this.input.length)
+            Arrays.fill(input, this.input.length, inputSize, Long.MIN_VALUE); // cards added since loading
+        written.copyFrom(this.written);
+        return this.input.length;
+    }
+}
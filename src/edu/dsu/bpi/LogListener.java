@@ -0,0 +1,5 @@
+package edu.dsu.bpi;
+
+public interface LogListener {
+    void logged(String message); // called on the log formatting thread, not the one running the program
+}
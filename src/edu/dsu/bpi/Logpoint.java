@@ -0,0 +1,87 @@
+package edu.dsu.bpi;
+
+import java.util.Map;
+
+/**
+ * A logpoint on one program line: every time the program arrives at the line it reports the pass
+ * number and the values of a list of data locations (e.g. data[4], sym14[0..2]), without halting.
+ * The values are copied when the line is reached and formatted later, off the execution thread.
+ */
+public final class Logpoint {
+    private final int line;
+    private final String[] locations; // as entered, without whitespace
+    int[] ranges; // first and last address of each location, resolved against the loaded program
+    int hits;
+
+    Logpoint(int line, String expression) {
+        this.line = line;
+        this.locations = expression.replaceAll("\\s+", "").split(",");
+    }
+
+    public int getLine() { return line; }
+    public String getExpression() { return join(locations); }
+    public int getHits() { return hits; }
+
+    void resolve(boolean labels, Map<Integer, Integer> symbols, Map<Integer, Integer> sizes, int memorySize) {
+        int[] ranges = new int[2 * locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            int[] range = Watchpoint.resolveRange(locations[i], labels, symbols, sizes, memorySize);
+            ranges[2 * i] = range[0];
+            ranges[2 * i + 1] = range[1];
+        }
+
+        this.ranges = ranges; // replaced in one write, a pending log keeps the ranges it was captured with
+    }
+
+    long[] capture(long[] data, PagedMemory paged, int[] ranges) { // the values of every location, in order
+        int count = 0;
+        for (int i = 0; i < ranges.length; i += 2)
+            count += ranges[i + 1] - ranges[i] + 1;
+
+        long[] values = new long[count];
+        for (int i = 0, at = 0; i < ranges.length; i += 2) {
+            int length = ranges[i + 1] - ranges[i] + 1;
+            int direct = Math.max(0, Math.min(length, data.length - ranges[i])); // the rest of the range is paged
+            System.arraycopy(data, ranges[i], values, at, direct);
+            if (direct < length)
+                paged.copy(ranges[i] + direct, values, at + direct, length - direct);
+            at += length;
+        }
+
+        return values;
+    }
+
+    String format(int pass, int[] ranges, long[] values) { // uninitialized locations show as ?
+        StringBuilder sb = new StringBuilder("Log row ").append(line).append(" pass ").append(pass).append(":");
+        for (int i = 0, at = 0; i < locations.length; i++) {
+            int first = ranges[2 * i], last = ranges[2 * i + 1];
+            sb.append((i == 0) ? " " : ", ").append(locations[i]).append(" = ");
+            if (first != last)
+                sb.append('[');
+
+            for (int address = first; address <= last; address++, at++) {
+                if (address != first)
+                    sb.append(", ");
+                sb.append((values[at] == Long.MIN_VALUE) ? "?" : Long.toString(values[at]));
+            }
+
+            if (first != last)
+                sb.append(']');
+        }
+
+        return sb.toString();
+    }
+
+    private static String join(String[] parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts)
+            sb.append((sb.length() == 0) ? "" : ", ").append(part);
+
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "row " + line + ": " + getExpression();
+    }
+}
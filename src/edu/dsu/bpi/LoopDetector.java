@@ -0,0 +1,86 @@
+package edu.dsu.bpi;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Proves that a program is stuck in an infinite loop. The whole machine state is the instruction
+ * pointer, data memory and input pointer, so if it ever repeats, the program runs the same steps
+ * again forever. Paged memory is only compared by its write count, so a loop that keeps writing it
+ * is never reported. A Zobrist-style hash of memory is kept up to date in O(1) on every write, the
+ * state is sampled at backward branches, and Brent's cycle detection compares each sample with a
+ * saved one whose distance doubles, so a cycle of k samples is found within a few times k samples.
+ * A matching hash is confirmed against the saved state before anything is reported.
+ */
+final class LoopDetector {
+    private static final long IP_KEY = 0x2545F4914F6CDD1DL, INPUT_KEY = 0x9E3779B97F4A7C15L;
+
+    private final long[] keys; // random key of each data location
+    private long dataHash;
+    private boolean stale = true; // memory changed without write() (loading, bulk loops, other tiers), rehash at the next sample
+
+    // Brent's algorithm: the saved sample and how far the current one is from it
+    private final long[] savedData;
+    private long savedHash;
+    private int savedIP, savedInput;
+    private long savedVersion;
+    private int power, distance; // distance == 0 until the first sample is saved
+
+    LoopDetector(int memorySize) {
+        keys = new long[memorySize];
+        savedData = new long[memorySize];
+        Random random = new Random(0x5EEDL); // the keys don't need to differ between runs
+        for (int i = 0; i < memorySize; i++)
+            keys[i] = random.nextLong();
+    }
+
+    void invalidate() { stale = true; }
+    void restart() { distance = 0; } // forget the saved sample, e.g. when samples stop being consecutive
+
+    void write(int address, long before, long after) {
+        dataHash ^= mix(keys[address], before) ^ mix(keys[address], after);
+    }
+
+    boolean sample(long[] data, long pagedVersion, int instructionPointer, int inputPointer) { // true once the state is proven to repeat
+        if (stale) {
+            dataHash = 0;
+            for (int i = 0; i < data.length; i++)
+                dataHash ^= mix(keys[i], data[i]);
+            stale = false;
+        }
+
+        long hash = dataHash ^ mix(IP_KEY, instructionPointer) ^ mix(INPUT_KEY, inputPointer) ^ pagedVersion;
+        if (distance == 0) {
+            save(data, hash, pagedVersion, instructionPointer, inputPointer);
+            power = distance = 1;
+            return false;
+        }
+
+        if (hash == savedHash && pagedVersion == savedVersion && instructionPointer == savedIP && inputPointer == savedInput && Arrays.equals(data, savedData))
+            return true;
+
+        if (distance == power) { // move the saved sample up to this one and double the distance to look ahead
+            save(data, hash, pagedVersion, instructionPointer, inputPointer);
+            power <<= 1;
+            distance = 0;
+        }
+
+        distance++;
+        return false;
+    }
+
+    private void save(long[] data, long hash, long pagedVersion, int instructionPointer, int inputPointer) {
+        System.arraycopy(data, 0, savedData, 0, data.length);
+        savedHash = hash;
+        savedVersion = pagedVersion;
+        savedIP = instructionPointer;
+        savedInput = inputPointer;
+    }
+
+    private static long mix(long key, long value) { // a location's contribution to the hash
+        long x = value * 0xBF58476D1CE4E5B9L + key;
+        x ^= x >>> 31;
+        x *= 0x94D049BB133111EBL;
+        return x ^ (x >>> 29);
+    }
+}
@@ -0,0 +1,237 @@
+package edu.dsu.bpi;
+
+import java.util.Arrays;
+
+/**
+ * Recognizes +7 loops that only copy one array to another, fill an array, sum an array, or find its
+ * maximum or minimum, and runs them as a single bulk operation on the data array. A loop only runs in
+ * bulk when every iteration is known up front to succeed; otherwise it runs line by line so a fault
+ * happens at the same iteration, with the same memory and counter, as before.
+ */
+final class LoopIdioms {
+    static final int NONE = -1, COPY = 0, FILL = 1, SUM = 2, MAX_MIN = 3;
+
+    private final DecodedProgram program;
+    private final int[] kind; // idiom of the loop starting at each line, NONE if there isn't one
+    private final int[] tail; // +7 line that closes the loop
+
+    private LoopIdioms(DecodedProgram program, int programSize) {
+        this.program = program;
+        kind = new int[programSize];
+        tail = new int[programSize];
+        Arrays.fill(kind, NONE);
+    }
+
+    static LoopIdioms recognize(DecodedProgram program, int programSize) {
+        LoopIdioms idioms = new LoopIdioms(program, programSize);
+
+        for (int line = 0; line < programSize; line++) {
+            int head = program.target[line];
+            if (program.opcodes[line] != Opcode.INCREMENT_AND_TEST || head < 0 || head >= line)
+                continue;
+
+            boolean safe = true; // in range, supported, and the line after the loop exists
+            for (int i = head; i <= line; i++)
+                safe &= program.isSafe(i);
+
+            int idiom = safe ? idioms.match(head, line) : NONE;
+            if (idiom != NONE && idioms.kind[head] == NONE) {
+                idioms.kind[head] = idiom;
+                idioms.tail[head] = line;
+            }
+        }
+
+        return idioms;
+    }
+
+    boolean isHead(int line) { return line >= 0 && line < kind.length && kind[line] != NONE; }
+    int getKind(int line) { return kind[line]; }
+    int getTail(int line) { return tail[line]; }
+
+    private int match(int head, int tail) {
+        int counter = program.addr1[tail], limit = program.addr2[tail];
+        if (counter == limit)
+            return NONE;
+
+        switch (tail - head) {
+            case 1: // -6 value, dst, counter
+                if (program.opcodes[head] == Opcode.TO_ARRAY && program.addr3[head] == counter
+                        && distinct(counter, limit, program.addr1[head]))
+                    return FILL;
+                break;
+            case 2: { // +6 src, counter, t followed by -6 t, dst, counter or +1 acc, t, acc
+                if (!loadsElement(head, counter))
+                    return NONE;
+
+                int t = program.addr3[head], next = head + 1;
+                if (program.opcodes[next] == Opcode.TO_ARRAY && program.addr1[next] == t && program.addr3[next] == counter
+                        && distinct(counter, limit, t))
+                    return COPY;
+
+                int acc = program.addr3[next];
+                if (program.opcodes[next] == Opcode.ADD && distinct(counter, limit, t, acc)
+                        && ((program.addr1[next] == acc && program.addr2[next] == t) || (program.addr1[next] == t && program.addr2[next] == acc)))
+                    return SUM;
+                break;
+            }
+            case 3: { // +6 src, counter, t, then a compare of t and m that skips +0 t, m by branching to the +7
+                if (!loadsElement(head, counter))
+                    return NONE;
+
+                int t = program.addr3[head], compare = head + 1, move = head + 2;
+                int opcode = program.opcodes[compare], m = program.addr3[move];
+                if ((opcode == Opcode.LESS_THAN || opcode == Opcode.GREATER_THAN_EQUAL) && program.target[compare] == tail
+                        && program.opcodes[move] == Opcode.MOVE && program.addr1[move] == t && distinct(counter, limit, t, m)
+                        && ((program.addr1[compare] == t && program.addr2[compare] == m) || (program.addr1[compare] == m && program.addr2[compare] == t)))
+                    return MAX_MIN;
+                break;
+            }
+        }
+
+        return NONE;
+    }
+
+    private boolean loadsElement(int line, int counter) {
+        return program.opcodes[line] == Opcode.FROM_ARRAY && program.addr2[line] == counter;
+    }
+
+    private static boolean distinct(int... addresses) {
+        for (int i = 0; i < addresses.length; i++) {
+            for (int j = i + 1; j < addresses.length; j++) {
+                if (addresses[i] == addresses[j])
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    /*
+     * Runs the loop starting at head to completion and returns the number of instructions that took,
+     * or -1 without touching memory if some iteration would fault, the loop isn't a plain bulk
+     * operation (e.g. it writes its own counter), or it would take more than budget instructions, in
+     * which case it has to run line by line so the instruction limit stops it at a backward branch.
+     */
+    long run(long[] data, int head, long budget) {
+        int tail = this.tail[head], counter = program.addr1[tail];
+        long start = data[counter], limit = data[program.addr2[tail]];
+        if (start == Long.MIN_VALUE || limit == Long.MIN_VALUE || start < 0 || start >= data.length)
+            return -1;
+
+        // the body runs before the first test, so at least once
+        long end = (start + 1 < limit) ? limit : start + 1;
+        if (end > data.length)
+            return -1;
+
+        int from = (int) start, count = (int) (end - start);
+        if (((kind[head] == FILL) ? 2L : 3L) * count > budget) // the fewest a max/min loop can take
+            return -1;
+
+        switch (kind[head]) {
+            case FILL: {
+                int dst = program.addr2[head], value = program.addr1[head];
+                if (!inBounds(data, head, dst, (int) end) || data[value] == Long.MIN_VALUE || within(counter, dst + from, count)
+                        || within(program.addr2[tail], dst + from, count))
+                    return -1;
+
+                Arrays.fill(data, dst + from, dst + (int) end, data[value]);
+                data[counter] = end;
+                return 2L * count;
+            }
+            case COPY: {
+                int src = program.addr1[head], dst = program.addr2[head + 1], t = program.addr3[head];
+                if (!inBounds(data, head, src, (int) end) || !inBounds(data, head + 1, dst, (int) end) || !initialized(data, src + from, count)
+                        || !outside(src + from, count, counter, program.addr2[tail], t)
+                        || !outside(dst + from, count, counter, program.addr2[tail], t)
+                        || (dst > src && dst < src + count)) // the loop would copy its own writes forward
+                    return -1;
+
+                data[t] = data[src + (int) end - 1]; // read before the copy can overwrite it
+                System.arraycopy(data, src + from, data, dst + from, count);
+                data[counter] = end;
+                return 3L * count;
+            }
+            case SUM: {
+                int src = program.addr1[head], t = program.addr3[head], acc = program.addr3[head + 1];
+                if (!inBounds(data, head, src, (int) end) || !outside(src + from, count, counter, program.addr2[tail], t, acc)
+                        || data[acc] == Long.MIN_VALUE)
+                    return -1;
+
+                long sum = data[acc];
+                for (int i = src + from; i < src + end; i++) {
+                    long value = data[i];
+                    if (value == Long.MIN_VALUE)
+                        return -1;
+
+                    sum += value;
+                    if (sum > 9999999999L || sum < -9999999999L)
+                        return -1;
+                }
+
+                data[t] = data[src + (int) end - 1];
+                data[acc] = sum;
+                data[counter] = end;
+                return 3L * count;
+            }
+            case MAX_MIN: {
+                int src = program.addr1[head], t = program.addr3[head], m = program.addr3[head + 2], compare = head + 1;
+                if (!inBounds(data, head, src, (int) end) || !outside(src + from, count, counter, program.addr2[tail], t, m)
+                        || data[m] == Long.MIN_VALUE)
+                    return -1;
+
+                // the move runs whenever the compare falls through, which keeps the larger or smaller value
+                boolean tFirst = program.addr1[compare] == t;
+                long best = data[m], moves = 0;
+                for (int i = src + from; i < src + end; i++) {
+                    long value = data[i];
+                    if (value == Long.MIN_VALUE)
+                        return -1;
+
+                    boolean taken = (program.opcodes[compare] == Opcode.LESS_THAN)
+                            ? (tFirst ? value < best : best < value) : (tFirst ? value >= best : best >= value);
+                    if (!taken) {
+                        best = value;
+                        moves++;
+                    }
+                }
+
+                if (3L * count + moves > budget)
+                    return -1;
+
+                data[t] = data[src + (int) end - 1];
+                data[m] = best;
+                data[counter] = end;
+                return 3L * count + moves;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean inBounds(long[] data, int line, int base, int end) { // every index below end is inside the symbol (or memory in raw mode)
+        int bound = program.bound[line];
+        return (bound == Integer.MAX_VALUE || end <= bound) && base + end <= data.length;
+    }
+
+    private static boolean initialized(long[] data, int from, int count) {
+        for (int i = from; i < from + count; i++) {
+            if (data[i] == Long.MIN_VALUE)
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean outside(int from, int count, int... addresses) { // none of the scalars is in the range
+        for (int address : addresses) {
+            if (within(address, from, count))
+                return false;
+        }
+
+        return true;
+    }
+
+    private static boolean within(int address, int from, int count) {
+        return address >= from && address < from + count;
+    }
+}
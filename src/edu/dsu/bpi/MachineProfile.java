@@ -0,0 +1,64 @@
+package edu.dsu.bpi;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The size of the machine an interpreter runs programs on: words of data memory, input cards and
+ * program lines. A 3-digit operand can only name the first 1000 words directly, so memory past that
+ * is only reached through +6/-6 indices. It's kept in pages allocated on first write, so a
+ * 10M-word profile costs only what the program touches. The classic profile is the original
+ * 1000-word machine.
+ */
+public final class MachineProfile {
+    public static final int DIRECT_WORDS = 1000; // addresses a direct operand can name
+    public static final MachineProfile CLASSIC = new MachineProfile("classic", DIRECT_WORDS, 1000, 1000);
+    public static final MachineProfile LARGE = new MachineProfile("large", 10000000, 1000000, 10000);
+
+    private static final Pattern SIZES = Pattern.compile("\\s*(\\d+)\\s*,\\s*(\\d+)\\s*,\\s*(\\d+)\\s*");
+
+    private final String name; // null for a custom profile
+    private final int memoryWords, inputCapacity, programCapacity;
+
+    public MachineProfile(int memoryWords, int inputCapacity, int programCapacity) {
+        this(null, memoryWords, inputCapacity, programCapacity);
+    }
+
+    private MachineProfile(String name, int memoryWords, int inputCapacity, int programCapacity) {
+        if (memoryWords <= 0 || inputCapacity <= 0 || programCapacity <= 0)
+            throw new IllegalArgumentException("a machine profile needs at least one word of memory, one input card and one program line");
+
+        this.name = name;
+        this.memoryWords = memoryWords;
+        this.inputCapacity = inputCapacity;
+        this.programCapacity = programCapacity;
+    }
+
+    public static MachineProfile parse(String text) { // classic, large, or words,inputs,lines
+        if (text.trim().equalsIgnoreCase(CLASSIC.name))
+            return CLASSIC;
+        if (text.trim().equalsIgnoreCase(LARGE.name))
+            return LARGE;
+
+        Matcher m = SIZES.matcher(text);
+        if (!m.matches())
+            throw new IllegalArgumentException(text + " isn't classic, large or words,inputs,lines");
+
+        try {
+            return new MachineProfile(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(text + " is too large for a machine profile");
+        }
+    }
+
+    public int getMemoryWords() { return memoryWords; }
+    public int getInputCapacity() { return inputCapacity; }
+    public int getProgramCapacity() { return programCapacity; }
+    public int getDirectWords() { return Math.min(memoryWords, DIRECT_WORDS); } // kept in a plain array, the rest is paged
+    public boolean isPaged() { return memoryWords > DIRECT_WORDS; }
+
+    @Override
+    public String toString() {
+        return ((name == null) ? "" : name + ": ") + memoryWords + " words, " + inputCapacity + " input cards, " + programCapacity + " program lines";
+    }
+}
@@ -2,21 +2,61 @@ package edu.dsu.bpi;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
 
-    private final static String HELP_MESSAGE = "Usage: BabelfishPI -i \"infile.txt\" [-o \"outfile.dat\"] [-l] [-d] [-b #line]\n\n" +
+    private final static String HELP_MESSAGE = "Usage: BabelfishPI -i \"infile.txt\" | --resume \"state.bpic\" [-o \"outfile.dat\"] [-l] [-d] [-b \"#line [if condition] [hit #count]\"]... [-w | -rw location]... [-t \"#line:locations\"]... [-r] [-c | -n | --threshold #count] [--closure-threshold #count] [--tiers] [--max-instructions #count] [--max-time #ms] [--max-output #lines] [--profile classic | large | words,inputs,lines] [--monitor \"state.bpim\"] [--checkpoint \"state.bpic\"]\n\n" +
             "Options:\n" +
             "\t-i \"infile.txt\"\t\tFile to be opened by the interpreter.\n" +
             "\t-o \"outfile.dat\"\tRather than opening the interpreter, clean and output the parsed file.\n" +
             "\t-l\t\t\tInput file uses symbols/labels (default: no).\n" +
             "\t-d\t\t\tOpen the interpreter in debug mode.\n" +
-            "\t-b #line\t\tBreak on specified line number.\n\n" +
+            "\t-b #line\t\tBreak on specified line number, can be given more than once. The line can be followed by\n" +
+            "\t\t\t\t\"if condition\" to only break when it holds, e.g. -b \"12 if data[5] >= 100\" (symN[offset] reads\n" +
+            "\t\t\t\ta data symbol in label mode), and/or \"hit #count\" to break on that arrival, e.g. -b \"12 hit 10000\".\n" +
+            "\t-w location\t\tHalt after any line that writes the location, can be given more than once. The location is an\n" +
+            "\t\t\t\taddress or range (12, data[10..19]), or in label mode a data symbol (sym14, sym14[3], sym14[2..5]).\n" +
+            "\t-rw location\t\tHalt after any line that reads or writes the location.\n" +
+            "\t-t #line:locations\tEach time the program reaches the line, log the pass number and the values of a comma\n" +
+            "\t\t\t\tseparated list of locations (as for -w) without halting, e.g. -t \"5:data[4],sym14[0..2]\".\n" +
+            "\t\t\t\tCan be given more than once, and also works with -r.\n" +
+            "\t-r, --fast\t\tRun the program to completion without debugging (ignores -d, -b, -w and -rw).\n" +
+            "\t-c, --compile\t\tCompile the program to JVM bytecode before it runs without debugging.\n" +
+            "\t-n, --no-compile\tNever compile the program or leave the interpreter.\n" +
+            "\t--threshold #count\tCompile the program once a backward branch has been taken #count times (default: 1000).\n" +
+            "\t--closure-threshold #count\tMove the program to pre-bound instruction nodes once a backward branch has been taken #count times (default: 10).\n" +
+            "\t--tiers\t\t\tReport how many instructions each execution tier ran.\n" +
+            "\t--max-instructions #count\tStop the run at the first backward branch after it has run #count instructions.\n" +
+            "\t--max-time #ms\t\tStop the run at a backward branch once it has run for #ms milliseconds.\n" +
+            "\t--max-output #lines\tStop the run at the first backward branch after it has printed #lines values.\n" +
+            "\t\t\t\tA stopped run reports where it stopped, and in the debugger c or d resumes it with the budgets started over.\n" +
+            "\t--profile name\t\tSize of the machine: classic (1000 words of memory, 1000 input cards and 1000 program lines,\n" +
+            "\t\t\t\tthe default), large (10000000 words, 1000000 input cards, 10000 lines) or words,inputs,lines.\n" +
+            "\t\t\t\tWords past 999 can only be reached through -6/+6 indices and cost memory once written.\n" +
+            "\t--monitor \"state.bpim\"\tPublish the registers, data and input to a memory-mapped file while the program runs,\n" +
+            "\t\t\t\tfor another process to watch (java -cp BabelfishPI.jar edu.dsu.bpi.StateMonitorReader \"state.bpim\").\n" +
+            "\t--checkpoint \"state.bpic\"\tWhen a budget stops the run, save the whole interpreter state to the file.\n" +
+            "\t--resume \"state.bpic\"\tContinue from a saved state instead of loading a program (use the same --profile).\n\n" +
             "After the program halts on a breakpoint, enter the following commands:\n" +
             "\t \t\t\tEnter nothing to step the program forward.\n" +
             "\tc\t\t\tResume program without debugging.\n" +
             "\td\t\t\tResume program with debugging.\n" +
             "\t#line\t\t\tEnter program line number to set/unset breakpoint. Setting and unsetting a breakpoint won't resume the program.\n" +
+            "\t#line if cond hit #n\tSet a breakpoint with a condition and/or hit count (either part is optional), as with -b.\n" +
+            "\tb\t\t\tList the breakpoints and how many times each has been hit.\n" +
+            "\tw location [log]\tSet/unset a watchpoint on writes to the location, as with -w. With log, report the writes without halting.\n" +
+            "\trw location [log]\tSet/unset a watchpoint on reads and writes of the location.\n" +
+            "\tw\t\t\tList the watchpoints and how many times each has been hit.\n" +
+            "\tt #line:locations\tSet a logpoint, as with -t. t #line unsets it and t alone lists the logpoints.\n" +
+            "\tf edits | edits...\tRun a copy of the program from here for each group of comma separated edits, in parallel, and\n" +
+            "\t\t\t\tprint each one's output, e.g. f data[4]=10 | data[4]=20, input[0]=5. f #count runs #count unchanged copies, up to 64.\n" +
             "\tq\t\t\tQuit the debugging session and end the program.";
 
     public static void main(String[] args) {
@@ -27,8 +67,20 @@ public class Main {
             String outFile = null;
             boolean labels = false;
             boolean debug = false;
+            boolean fast = false;
+            boolean compile = true;
+            int compileThreshold = -1;
+            int closureThreshold = -1;
+            boolean tiers = false;
+            long[] limits = new long[Budget.values().length]; // 0 for no limit
+            MachineProfile profile = MachineProfile.CLASSIC;
+            String monitorFile = null;
+            String checkpointFile = null;
+            String resumeFile = null;
             boolean help = false;
-            int breakLine = -1;
+            List<String> breakpoints = new ArrayList<>();
+            List<String> watchpoints = new ArrayList<>(); // locations, prefixed with r if reads are watched too
+            List<String> logpoints = new ArrayList<>();
 
             for (int i = 0; i < args.length; i++) {
                 if (args[i].equalsIgnoreCase("-i") && args.length > i+1) {
@@ -39,13 +91,64 @@ public class Main {
                     outFile = args[i];
                 } else if (args[i].equalsIgnoreCase("-b") && args.length > i+1) {
                     i++;
-                    try {
-                        breakLine = Integer.parseInt(args[i]);
-                    } catch (NumberFormatException e) {
+                    if (args[i].trim().matches("-?\\d+(\\s.*)?")) // the rest is checked once the program is loaded
+                        breakpoints.add(args[i]);
+                    else
                         System.out.println("Invalid breakpoint number: " + args[i]);
-                    }
+                } else if ((args[i].equalsIgnoreCase("-w") || args[i].equalsIgnoreCase("-rw")) && args.length > i+1) {
+                    watchpoints.add(((args[i].length() == 3) ? "r" : "") + args[i+1]);
+                    i++;
+                } else if (args[i].equalsIgnoreCase("-t") && args.length > i+1) {
+                    i++;
+                    logpoints.add(args[i]);
                 } else if (args[i].equalsIgnoreCase("-d"))
                     debug = true;
+                else if (args[i].equalsIgnoreCase("-r") || args[i].equalsIgnoreCase("--fast"))
+                    fast = true;
+                else if (args[i].equalsIgnoreCase("-c") || args[i].equalsIgnoreCase("--compile"))
+                    compileThreshold = 0;
+                else if (args[i].equalsIgnoreCase("-n") || args[i].equalsIgnoreCase("--no-compile"))
+                    compile = false;
+                else if (args[i].equalsIgnoreCase("--threshold") && args.length > i+1) {
+                    i++;
+                    try {
+                        compileThreshold = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) {
+                        System.out.println("Invalid compile threshold: " + args[i]);
+                    }
+                } else if (args[i].equalsIgnoreCase("--closure-threshold") && args.length > i+1) {
+                    i++;
+                    try {
+                        closureThreshold = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) {
+                        System.out.println("Invalid closure threshold: " + args[i]);
+                    }
+                } else if ((args[i].equalsIgnoreCase("--max-instructions") || args[i].equalsIgnoreCase("--max-time") || args[i].equalsIgnoreCase("--max-output")) && args.length > i+1) {
+                    Budget budget = args[i].equalsIgnoreCase("--max-instructions") ? Budget.INSTRUCTIONS : args[i].equalsIgnoreCase("--max-time") ? Budget.TIME : Budget.OUTPUT;
+                    i++;
+                    try {
+                        limits[budget.ordinal()] = Long.parseLong(args[i]);
+                    } catch (NumberFormatException e) {
+                        System.out.println("Invalid limit for " + args[i-1] + ": " + args[i]);
+                    }
+                } else if (args[i].equalsIgnoreCase("--profile") && args.length > i+1) {
+                    i++;
+                    try {
+                        profile = MachineProfile.parse(args[i]);
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Invalid machine profile: " + e.getMessage());
+                    }
+                } else if (args[i].equalsIgnoreCase("--monitor") && args.length > i+1) {
+                    i++;
+                    monitorFile = args[i];
+                } else if (args[i].equalsIgnoreCase("--checkpoint") && args.length > i+1) {
+                    i++;
+                    checkpointFile = args[i];
+                } else if (args[i].equalsIgnoreCase("--resume") && args.length > i+1) {
+                    i++;
+                    resumeFile = args[i];
+                } else if (args[i].equalsIgnoreCase("--tiers"))
+                    tiers = true;
                 else if (args[i].equalsIgnoreCase("-l"))
                     labels = true;
                 else if (args[i].equalsIgnoreCase("-h") || args[i].equalsIgnoreCase("-?") || args[i].equalsIgnoreCase("-help")
@@ -53,12 +156,12 @@ public class Main {
                     help = true;
             }
 
-            if (help || inFile == null)
+            if (help || inFile == null && resumeFile == null)
                 System.out.println(HELP_MESSAGE);
             else {
 
                 try {
-                    openConsoleDebugger(inFile, outFile, labels, debug, breakLine);
+                    openConsoleDebugger(inFile, outFile, labels, debug, fast, compile, compileThreshold, closureThreshold, tiers, limits, profile, monitorFile, checkpointFile, resumeFile, breakpoints, watchpoints, logpoints);
                 }  catch (Exception e) {
                     System.out.println(e.getMessage());
                 }
@@ -78,27 +181,71 @@ public class Main {
         });
     }
 
-    private static void openConsoleDebugger(String inFile, String outFile, boolean labels, boolean debug, int breakLine) throws Exception {
+    private static void openConsoleDebugger(String inFile, String outFile, boolean labels, boolean debug, boolean fast, boolean compile, int compileThreshold,
+                                            int closureThreshold, boolean tiers, long[] limits, MachineProfile profile, String monitorFile,
+                                            String checkpointFile, String resumeFile, List<String> breakpoints,
+                                            List<String> watchpoints, List<String> logpoints) throws Exception {
         if (outFile != null) {
             Interpreter.exportProgram(inFile, outFile);
             System.out.println("Parsed program exported to " + outFile);
         } else {
             Interpreter interp = null;
             try {
-                interp = new Interpreter(inFile, labels);
+                if (resumeFile != null) {
+                    Interpreter resumed = new Interpreter(profile);
+                    try (InputStream in = new FileInputStream(resumeFile)) {
+                        resumed.restore(in);
+                    }
+                    interp = resumed;
+                } else
+                    interp = new Interpreter(inFile, labels, profile);
             } catch (Exception e) {
                 System.out.println("Loading Error: " + e.getMessage());
             }
 
             if (interp != null) {
-                if (breakLine != -1)
-                    System.out.println(interp.setBreakpoint(breakLine));
+                for (int i = 0; i < interp.getLoadWarnings().size() && !fast; i++) // keep batch output to the program's own
+                    System.out.println("Warning: " + interp.getLoadWarnings().get(i));
+
+                interp.setClosureEnabled(compile);
+                interp.setCompilationEnabled(compile);
+                if (compileThreshold >= 0)
+                    interp.setCompileThreshold(compileThreshold);
+                if (closureThreshold >= 0)
+                    interp.setClosureThreshold(closureThreshold);
+                interp.setInstructionLimit(limits[Budget.INSTRUCTIONS.ordinal()]);
+                interp.setTimeLimit(limits[Budget.TIME.ordinal()]);
+                interp.setOutputLimit(limits[Budget.OUTPUT.ordinal()]);
+                if (monitorFile != null)
+                    interp.setMonitorFile(new File(monitorFile));
+
+                for (int i = 0; i < breakpoints.size() && !fast; i++)
+                    System.out.println(interp.setBreakpoint(breakpoints.get(i)));
+                for (int i = 0; i < watchpoints.size() && !fast; i++) {
+                    boolean reads = watchpoints.get(i).startsWith("r");
+                    System.out.println(interp.setWatchpoint(watchpoints.get(i).substring(reads ? 1 : 0), reads, true));
+                }
+                for (String logpoint : logpoints) {
+                    String message = interp.setLogpoint(logpoint);
+                    if (!fast || !message.startsWith("Logpoint set")) // keep batch output to the program's own
+                        System.out.println(message);
+                }
 
                 try {
-                    new DebuggerConsole(interp, debug);
+                    new DebuggerConsole(interp, debug, fast);
                 } catch (Exception e) {
                     System.out.println(e.getMessage());
                 }
+
+                if (checkpointFile != null && interp.getExhaustedBudget() != null) {
+                    try (OutputStream out = new FileOutputStream(checkpointFile)) {
+                        interp.checkpoint(out);
+                    }
+                    System.out.println("State saved to " + checkpointFile + ", continue with --resume " + checkpointFile);
+                }
+
+                if (tiers)
+                    System.out.println(interp.getTierReport());
             }
         }
 
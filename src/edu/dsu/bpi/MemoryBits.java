@@ -0,0 +1,116 @@
+package edu.dsu.bpi;
+
+import java.util.Arrays;
+
+/**
+ * One bit per data address, with rank and select so the debugger's data table can go from a row to
+ * the address it shows (the row-th set address) and back (how many set addresses come before it).
+ * Rank counts are kept per 64-bit word and only recomputed from the first word that gained a bit
+ * since they were last used. Read-only outside the package, the interpreter does the writing.
+ */
+public final class MemoryBits {
+    private final long[] words;
+    private final int[] ranks; // set bits in the words before each word, valid below rankedWords
+    private int rankedWords;
+    private int cardinality;
+    private int firstWord, lastWord; // span of words that can have bits set, so clearing a few bits is cheap
+
+    MemoryBits(int size) {
+        words = new long[(size + 63) >>> 6];
+        ranks = new int[words.length];
+        firstWord = words.length;
+        lastWord = -1;
+    }
+
+    public int size() { return words.length << 6; }
+    public int cardinality() { return cardinality; }
+    public boolean get(int address) { return (words[address >>> 6] & 1L << address) != 0; }
+
+    public int rank(int address) { // set addresses below address, the row of address if it's set
+        int word = address >>> 6;
+        updateRanks(word);
+        return ranks[word] + Long.bitCount(words[word] & ((1L << address) - 1));
+    }
+
+    public int select(int row) { // the row-th set address, -1 if there aren't that many
+        if (row < 0 || row >= cardinality)
+            return -1;
+
+        updateRanks(lastWord);
+        int low = firstWord, high = lastWord; // the last word whose rank is at most row holds it
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (ranks[middle] <= row)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+
+        long bits = words[low];
+        for (int skip = row - ranks[low]; skip > 0; skip--)
+            bits &= bits - 1; // drop the lowest set bit
+
+        return (low << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    public int nextSetBit(int address) { // first set address at or after address, -1 if there isn't one
+        int word = address >>> 6;
+        if (word > lastWord)
+            return -1;
+
+        long bits = words[word] & (-1L << address);
+        while (bits == 0) {
+            if (++word > lastWord)
+                return -1;
+            bits = words[word];
+        }
+
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    void set(int address) {
+        int word = address >>> 6;
+        long bit = 1L << address;
+        if ((words[word] & bit) != 0)
+            return;
+
+        words[word] |= bit;
+        cardinality++;
+        rankedWords = Math.min(rankedWords, word + 1); // the counts of later words include this one
+        firstWord = Math.min(firstWord, word);
+        lastWord = Math.max(lastWord, word);
+    }
+
+    void or(MemoryBits other) {
+        for (int i = other.firstWord; i <= other.lastWord; i++) {
+            if ((other.words[i] & ~words[i]) != 0) {
+                cardinality += Long.bitCount(other.words[i] & ~words[i]);
+                words[i] |= other.words[i];
+                rankedWords = Math.min(rankedWords, i + 1);
+            }
+        }
+
+        firstWord = Math.min(firstWord, other.firstWord);
+        lastWord = Math.max(lastWord, other.lastWord);
+    }
+
+    void copyFrom(MemoryBits other) {
+        clear();
+        or(other);
+    }
+
+    void clear() {
+        if (lastWord >= firstWord)
+            Arrays.fill(words, firstWord, lastWord + 1, 0);
+
+        cardinality = 0;
+        rankedWords = 0;
+        firstWord = words.length;
+        lastWord = -1;
+    }
+
+    private void updateRanks(int word) { // make ranks valid up to and including word
+        for (; rankedWords <= word; rankedWords++)
+            ranks[rankedWords] = (rankedWords == 0) ? 0 : ranks[rankedWords - 1] + Long.bitCount(words[rankedWords - 1]);
+    }
+}
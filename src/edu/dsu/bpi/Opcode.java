@@ -0,0 +1,169 @@
+package edu.dsu.bpi;
+
+public final class Opcode {
+    // positive operations share their card digit, negative operations are offset by 10
+    public static final int MOVE = 0;
+    public static final int ADD = 1;
+    public static final int MULTIPLY = 2;
+    public static final int SQUARE = 3;
+    public static final int EQUAL = 4;
+    public static final int GREATER_THAN_EQUAL = 5;
+    public static final int FROM_ARRAY = 6;
+    public static final int INCREMENT_AND_TEST = 7;
+    public static final int READ = 8;
+    public static final int END = 9; // +9 card with non-zero operands (doesn't complete the program)
+
+    public static final int UNSUPPORTED_0 = 10;
+    public static final int SUBTRACT = 11;
+    public static final int DIVIDE = 12;
+    public static final int ROOT = 13;
+    public static final int UNEQUAL = 14;
+    public static final int LESS_THAN = 15;
+    public static final int TO_ARRAY = 16;
+    public static final int LABEL = 17;
+    public static final int PRINT = 18;
+    public static final int UNSUPPORTED_9 = 19;
+
+    public static final int HALT = 20; // the +9000000000 end card
+    public static final int NONE = -1; // program line that has not been set
+
+    // superinstructions, each covers its line and the line after it
+    public static final int FROM_ARRAY_COMPARE = 30; // +6 followed by +4/-4/+5/-5
+    public static final int READ_TO_ARRAY = 31; // +8 followed by -6
+    public static final int ADD_INCREMENT_AND_TEST = 32; // +1 followed by +7
+
+    private Opcode() {}
+
+    public static int encode(boolean positive, int op, int opn1, int opn2, int opn3) {
+        if (positive && op == 9 && opn1 == 0 && opn2 == 0 && opn3 == 0)
+            return HALT;
+
+        return (positive) ? op : op + 10;
+    }
+
+    public static boolean isPositive(int opcode) {
+        return opcode < 10 || opcode == HALT;
+    }
+
+    public static int getOp(int opcode) {
+        return (opcode == HALT) ? 9 : opcode % 10;
+    }
+
+    public static int fuse(int first, int second) { // superinstruction for a pair of adjacent opcodes, or NONE
+        if (first == FROM_ARRAY && (second == EQUAL || second == UNEQUAL || second == GREATER_THAN_EQUAL || second == LESS_THAN))
+            return FROM_ARRAY_COMPARE;
+        else if (first == READ && second == TO_ARRAY)
+            return READ_TO_ARRAY;
+        else if (first == ADD && second == INCREMENT_AND_TEST)
+            return ADD_INCREMENT_AND_TEST;
+        else
+            return NONE;
+    }
+
+    public static boolean isBranch(int opcode) { // opn3 is a program line (or label)
+        switch (opcode) {
+            case EQUAL:
+            case UNEQUAL:
+            case GREATER_THAN_EQUAL:
+            case LESS_THAN:
+            case INCREMENT_AND_TEST:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public static boolean fallsThrough(int opcode, int line) { // the line after runs next unless a branch is taken
+        switch (opcode) {
+            case HALT:
+                return line == 0; // an end card on line 0 doesn't end the program
+            case UNSUPPORTED_0:
+            case UNSUPPORTED_9:
+            case LABEL:
+                return false; // label cards only reach the program in raw mode, where they fault
+            default:
+                return true;
+        }
+    }
+
+    public static boolean usesDataOperand(int opcode, int operand) { // operand is 1, 2 or 3
+        switch (opcode) {
+            case MOVE:
+            case SQUARE:
+            case ROOT:
+                return operand == 1 || operand == 3;
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+            case FROM_ARRAY:
+            case TO_ARRAY:
+                return true;
+            case EQUAL:
+            case UNEQUAL:
+            case GREATER_THAN_EQUAL:
+            case LESS_THAN:
+            case INCREMENT_AND_TEST:
+                return operand == 1 || operand == 2;
+            case READ:
+                return operand == 3;
+            case PRINT:
+                return operand == 1;
+            default:
+                return false;
+        }
+    }
+
+    public static boolean readsOperand(int opcode, int operand) { // data[operand] is read directly
+        switch (opcode) {
+            case MOVE:
+            case SQUARE:
+            case ROOT:
+            case PRINT:
+                return operand == 1;
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+            case EQUAL:
+            case UNEQUAL:
+            case GREATER_THAN_EQUAL:
+            case LESS_THAN:
+            case INCREMENT_AND_TEST:
+                return operand == 1 || operand == 2;
+            case FROM_ARRAY:
+                return operand == 2;
+            case TO_ARRAY:
+                return operand == 1 || operand == 3;
+            default:
+                return false;
+        }
+    }
+
+    public static int getWrittenOperand(int opcode) { // operand whose data location is written directly, or 0 if there is none
+        switch (opcode) {
+            case MOVE:
+            case ADD:
+            case SUBTRACT:
+            case MULTIPLY:
+            case DIVIDE:
+            case SQUARE:
+            case ROOT:
+            case FROM_ARRAY:
+            case READ:
+                return 3;
+            case INCREMENT_AND_TEST:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    public static int getArrayOperand(int opcode) { // operand holding the array base, or 0 if there is none
+        switch (opcode) {
+            case FROM_ARRAY: return 1;
+            case TO_ARRAY: return 2;
+            default: return 0;
+        }
+    }
+}
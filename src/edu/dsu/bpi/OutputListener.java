@@ -0,0 +1,5 @@
+package edu.dsu.bpi;
+
+public interface OutputListener {
+    void valuePrinted(long value); // called for every -8 print, also while running without debugging
+}
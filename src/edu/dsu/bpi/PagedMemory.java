@@ -0,0 +1,93 @@
+package edu.dsu.bpi;
+
+import java.util.Arrays;
+
+/**
+ * Data memory past the directly addressable words of a large MachineProfile. A page is allocated
+ * the first time one of its words is written, so reading an untouched page sees uninitialized words
+ * without costing anything. A fork shares every page with the memory it came from, and whichever
+ * side writes a shared page first copies it.
+ */
+final class PagedMemory {
+    private static final int PAGE_BITS = 12, PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final int first; // address of the first paged word
+    private final long[][] pages; // null until written
+    private int pageCount;
+    private long version; // bumped on every write, loop detection compares it instead of the pages
+    private boolean[] shared; // pages a fork can still see, null if this memory was never forked
+
+    PagedMemory(int first, int words) {
+        this.first = first;
+        this.pages = new long[(words - first + PAGE_SIZE - 1) >>> PAGE_BITS][];
+    }
+
+    private PagedMemory(PagedMemory parent) {
+        first = parent.first;
+        pages = parent.pages.clone();
+        pageCount = parent.pageCount;
+        version = parent.version;
+        shared = new boolean[pages.length];
+        if (parent.shared == null)
+            parent.shared = new boolean[pages.length];
+
+        for (int i = 0; i < pages.length; i++) {
+            if (pages[i] != null)
+                shared[i] = parent.shared[i] = true;
+        }
+    }
+
+    PagedMemory fork() { return new PagedMemory(this); }
+
+    long get(int address) {
+        int offset = address - first;
+        long[] page = pages[offset >>> PAGE_BITS];
+        return (page == null) ? Long.MIN_VALUE : page[offset & (PAGE_SIZE - 1)];
+    }
+
+    void set(int address, long value) {
+        int offset = address - first;
+        long[] page = pages[offset >>> PAGE_BITS];
+        if (page == null) {
+            page = pages[offset >>> PAGE_BITS] = new long[PAGE_SIZE];
+            Arrays.fill(page, Long.MIN_VALUE);
+            pageCount++;
+        } else if (shared != null && shared[offset >>> PAGE_BITS]) {
+            page = pages[offset >>> PAGE_BITS] = page.clone();
+            shared[offset >>> PAGE_BITS] = false;
+        }
+
+        page[offset & (PAGE_SIZE - 1)] = value;
+        version++;
+    }
+
+    int nextInitialized(int address) { // first initialized address at or after address, -1 if there isn't one
+        for (int offset = Math.max(address - first, 0); (offset >>> PAGE_BITS) < pages.length; offset++) {
+            long[] page = pages[offset >>> PAGE_BITS];
+            if (page == null)
+                offset |= PAGE_SIZE - 1; // skip the rest of the page
+            else if (page[offset & (PAGE_SIZE - 1)] != Long.MIN_VALUE)
+                return first + offset;
+        }
+
+        return -1;
+    }
+
+    void copy(int address, long[] to, int at, int length) { // words from address on, uninitialized ones as Long.MIN_VALUE
+        for (int i = 0; i < length; i++)
+            to[at + i] = get(address + i);
+    }
+
+    void clear() {
+        for (int i = 0; i < pages.length; i++)
+            pages[i] = null;
+        if (shared != null)
+            Arrays.fill(shared, false);
+
+        pageCount = 0;
+        version++;
+    }
+
+    int getPageCount() { return pageCount; }
+    long getVersion() { return version; }
+}
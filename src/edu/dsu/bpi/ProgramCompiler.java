@@ -0,0 +1,682 @@
+package edu.dsu.bpi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Translates a loaded program into a JVM class so HotSpot can JIT it like normal Java code.
+ * Every program line becomes straight-line bytecode in a single execute method, branches become
+ * jumps, and faults are raised by the CompiledProgram helpers with the interpreter's messages.
+ */
+public final class ProgramCompiler {
+    private static final String BASE_CLASS = "edu/dsu/bpi/CompiledProgram";
+    private static final String HELPER_READ = "([JII)J";
+    private static final String FAULT_DESCRIPTOR = "(II)Ledu/dsu/bpi/ProgramFault;";
+    private static final AtomicInteger classCount = new AtomicInteger();
+    private static final int CACHE_CAPACITY = 64;
+
+    // compiled classes by program content, so reloading a program (e.g. with a different input deck) doesn't recompile it
+    private static final Map<ProgramKey, Class<?>> cache = new LinkedHashMap<ProgramKey, Class<?>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ProgramKey, Class<?>> eldest) {
+            return size() > CACHE_CAPACITY;
+        }
+    };
+
+    // JVM opcodes used by the generator
+    private static final int ICONST_0 = 0x03, LCONST_0 = 0x09, LCONST_1 = 0x0a, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13;
+    private static final int ILOAD_2 = 0x1c, LLOAD_3 = 0x21, LSTORE_3 = 0x42, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, LALOAD = 0x2f, LASTORE = 0x50;
+    private static final int POP2 = 0x58, DUP2 = 0x5c, LADD = 0x61, LSUB = 0x65, LMUL = 0x69, L2D = 0x8a, D2L = 0x8f, LCMP = 0x94;
+    private static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, GOTO = 0xa7, TABLESWITCH = 0xaa;
+    private static final int IRETURN = 0xac, RETURN = 0xb1, PUTFIELD = 0xb5, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, ATHROW = 0xbf;
+
+    private final DecodedProgram program;
+    private final int programSize;
+    private final LoopIdioms idioms;
+    private final int[] loopBody; // label after the bulk attempt of each recognized loop, which its +7 branches back to
+    private final ConstantPool pool = new ConstantPool();
+    private final Code code = new Code();
+    private final List<int[]> missingStubs = new ArrayList<>(); // {label, line, from}
+    private final List<int[]> backwardStubs = new ArrayList<>(); // {label, line, target line, target label}
+    private int countedStart, countHandler; // code range that counts instructions in local 3, and its exception handler
+
+    private ProgramCompiler(DecodedProgram program, int programSize) {
+        this.program = program;
+        this.programSize = programSize;
+        idioms = LoopIdioms.recognize(program, programSize);
+        loopBody = new int[programSize];
+    }
+
+    public static CompiledProgram compile(DecodedProgram program, int programSize) { // returns null if the program can't be compiled
+        ProgramKey key = new ProgramKey(program, programSize);
+        Class<?> compiledClass;
+
+        synchronized (cache) {
+            if (cache.containsKey(key))
+                compiledClass = cache.get(key); // null if it failed to compile before
+            else {
+                compiledClass = define(program, programSize);
+                cache.put(key, compiledClass);
+            }
+        }
+
+        try {
+            return (compiledClass == null) ? null : (CompiledProgram) compiledClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static Class<?> define(DecodedProgram program, int programSize) {
+        String name = "edu/dsu/bpi/compiled/Program" + classCount.incrementAndGet();
+
+        try {
+            byte[] classFile = new ProgramCompiler(program, programSize).generate(name);
+            Class<?> compiledClass = new Loader().define(name.replace('/', '.'), classFile);
+            compiledClass.getDeclaredConstructor().newInstance(); // verify it now, rather than on first use
+            return compiledClass;
+        } catch (Exception | LinkageError e) {
+            return null; // too large for a single method, the interpreter runs it instead
+        }
+    }
+
+    private byte[] generate(String name) throws IOException {
+        // execute(long[] data, int start): jump to the start line, then run the program's lines in order
+        for (int i = 0; i < programSize; i++)
+            code.newLabel(); // label i marks line i
+
+        code.op(LCONST_0);
+        code.op(LSTORE_3);
+        countedStart = code.length();
+
+        int defaultLabel = code.newLabel();
+        code.op(ILOAD_2);
+        code.tableSwitch(programSize, defaultLabel);
+
+        for (int i = 0; i < programSize; i++) {
+            code.mark(i);
+            if (idioms.isHead(i))
+                emitLoop(i);
+
+            code.op(LLOAD_3);
+            code.op(LCONST_1);
+            code.op(LADD);
+            code.op(LSTORE_3);
+            emitLine(i);
+        }
+
+        // falling off the last card
+        emitMissing(programSize, programSize - 1);
+
+        code.mark(defaultLabel);
+        code.op(ALOAD_0);
+        code.op(ILOAD_2);
+        pushInt(-1);
+        invoke(INVOKEVIRTUAL, BASE_CLASS, "missing", FAULT_DESCRIPTOR);
+        code.op(ATHROW);
+
+        for (int[] stub : missingStubs) {
+            code.mark(stub[0]);
+            emitMissing(stub[1], stub[2]);
+        }
+
+        // a backward branch goes through pause(line, target) and stop(count), and returns PAUSED once a budget is used up
+        for (int[] stub : backwardStubs) {
+            code.mark(stub[0]);
+            code.op(ALOAD_0);
+            pushInt(stub[1]);
+            pushInt(stub[2]);
+            invoke(INVOKEVIRTUAL, BASE_CLASS, "pause", "(II)Z");
+            code.jump(IFEQ, stub[3]);
+            code.op(ALOAD_0);
+            code.op(LLOAD_3);
+            invoke(INVOKEVIRTUAL, BASE_CLASS, "stop", "(J)Z");
+            code.jump(IFEQ, stub[3]);
+            saveCount();
+            pushInt(CompiledProgram.PAUSED);
+            code.op(IRETURN);
+        }
+
+        // any fault leaves through here to hand over the instruction count
+        countHandler = code.length();
+        saveCount();
+        code.op(ATHROW);
+
+        code.resolve();
+        return writeClass(name);
+    }
+
+    private void emitLine(int line) {
+        int a1 = program.addr1[line], a2 = program.addr2[line], a3 = program.addr3[line];
+
+        switch (program.opcodes[line]) {
+            case Opcode.MOVE: // data[a3] = read(a1)
+                storeTo(a3);
+                read(line, 1);
+                code.op(LASTORE);
+                break;
+            case Opcode.ADD:
+            case Opcode.SUBTRACT: // data[a3] = arith(read(a1) op read(a2))
+                storeTo(a3);
+                beginArith(line);
+                read(line, 1);
+                read(line, 2);
+                code.op((program.opcodes[line] == Opcode.ADD) ? LADD : LSUB);
+                endArith(line);
+                code.op(LASTORE);
+                break;
+            case Opcode.MULTIPLY:
+            case Opcode.SQUARE: // data[a3] = arith(multiply(read(a1), read(a2 or a1)))
+                storeTo(a3);
+                beginArith(line);
+                if (checkOverflow(line))
+                    code.op(ALOAD_0);
+                read(line, 1);
+                if (program.opcodes[line] == Opcode.SQUARE)
+                    code.op(DUP2);
+                else
+                    read(line, 2);
+
+                if (checkOverflow(line)) { // exact, the product may not fit in 64 bits
+                    pushInt(line);
+                    invoke(INVOKEVIRTUAL, BASE_CLASS, "multiply", "(JJI)J");
+                } else
+                    code.op(LMUL);
+                endArith(line);
+                code.op(LASTORE);
+                break;
+            case Opcode.DIVIDE:
+                storeTo(a3);
+                beginArith(line);
+                code.op(ALOAD_0);
+                read(line, 1);
+                read(line, 2);
+                pushInt(line);
+                invoke(INVOKEVIRTUAL, BASE_CLASS, "divide", "(JJI)J");
+                endArith(line);
+                code.op(LASTORE);
+                break;
+            case Opcode.ROOT:
+                storeTo(a3);
+                beginArith(line);
+                read(line, 1);
+                code.op(L2D);
+                invoke(INVOKESTATIC, "java/lang/Math", "sqrt", "(D)D");
+                code.op(D2L);
+                endArith(line);
+                code.op(LASTORE);
+                break;
+            case Opcode.EQUAL:
+            case Opcode.UNEQUAL:
+            case Opcode.GREATER_THAN_EQUAL:
+            case Opcode.LESS_THAN:
+                read(line, 1);
+                read(line, 2);
+                code.op(LCMP);
+                branch(compareJump(program.opcodes[line]), line);
+                break;
+            case Opcode.FROM_ARRAY: // data[a3] = readArray(data, a1, read(a2), bound, symbol, line)
+                storeTo(a3);
+                code.op(ALOAD_0);
+                code.op(ALOAD_1);
+                pushInt(a1);
+                read(line, 2);
+                pushInt(program.bound[line]);
+                pushInt(program.opn1[line]);
+                pushInt(line);
+                invoke(INVOKEVIRTUAL, BASE_CLASS, "readArray", "([JIJIII)J");
+                code.op(LASTORE);
+                break;
+            case Opcode.TO_ARRAY: // writeArray(data, a2, read(a1), read(a3), bound, symbol, line)
+                code.op(ALOAD_0);
+                code.op(ALOAD_1);
+                pushInt(a2);
+                read(line, 1);
+                read(line, 3);
+                pushInt(program.bound[line]);
+                pushInt(program.opn2[line]);
+                pushInt(line);
+                invoke(INVOKEVIRTUAL, BASE_CLASS, "writeArray", "([JIJJIII)V");
+                break;
+            case Opcode.INCREMENT_AND_TEST: // data[a1] = read(a1) + 1, then data[a1] < read(a2)
+                storeTo(a1);
+                read(line, 1);
+                code.op(LCONST_1);
+                code.op(LADD);
+                code.op(LASTORE);
+                code.op(ALOAD_1);
+                pushInt(a1);
+                code.op(LALOAD); // just written, no need to check it
+                read(line, 2);
+                code.op(LCMP);
+                branch(IFLT, line);
+                break;
+            case Opcode.READ:
+                storeTo(a3);
+                code.op(ALOAD_0);
+                pushInt(line);
+                invoke(INVOKEVIRTUAL, BASE_CLASS, "readInput", "(I)J");
+                code.op(LASTORE);
+                break;
+            case Opcode.PRINT:
+                code.op(ALOAD_0);
+                read(line, 1);
+                invoke(INVOKEVIRTUAL, BASE_CLASS, "print", "(J)V");
+                break;
+            case Opcode.UNSUPPORTED_0: unsupported(0, line); break;
+            case Opcode.LABEL: unsupported(7, line); break; // label cards never reach the program in label mode
+            case Opcode.UNSUPPORTED_9: unsupported(9, line); break;
+            case Opcode.HALT:
+                if (line > 0) { // the interpreter doesn't treat an end card on line 0 as the end of the program
+                    saveCount();
+                    pushInt(line);
+                    code.op(IRETURN);
+                }
+                break;
+            case Opcode.END:
+                break; // +9 with operands doesn't end the program
+        }
+    }
+
+    private void emitLoop(int head) { // count += loop(data, head, count) and continue after the loop, unless that returns -1
+        int lineByLine = code.newLabel();
+        loopBody[head] = code.newLabel();
+
+        code.op(ALOAD_0);
+        code.op(ALOAD_1);
+        pushInt(head);
+        code.op(LLOAD_3);
+        invoke(INVOKEVIRTUAL, BASE_CLASS, "loop", "([JIJ)J");
+        code.op(DUP2);
+        code.op(LCONST_0);
+        code.op(LCMP);
+        code.jump(IFLT, lineByLine);
+        code.op(LLOAD_3);
+        code.op(LADD);
+        code.op(LSTORE_3);
+        code.jump(GOTO, idioms.getTail(head) + 1); // verified to exist
+
+        code.mark(lineByLine);
+        code.op(POP2);
+        code.mark(loopBody[head]);
+    }
+
+    private static int compareJump(int opcode) { // lcmp leaves -1, 0 or 1
+        switch (opcode) {
+            case Opcode.EQUAL: return IFEQ;
+            case Opcode.UNEQUAL: return IFNE;
+            case Opcode.GREATER_THAN_EQUAL: return IFGE;
+            default: return IFLT;
+        }
+    }
+
+    private void storeTo(int address) {
+        code.op(ALOAD_1);
+        pushInt(address);
+    }
+
+    private void read(int line, int operand) {
+        int address = (operand == 1) ? program.addr1[line] : (operand == 2) ? program.addr2[line] : program.addr3[line];
+        if (program.isInitializedRead(line, operand)) { // proven by DefiniteInitialization, no sentinel check needed
+            code.op(ALOAD_1);
+            pushInt(address);
+            code.op(LALOAD);
+            return;
+        }
+
+        code.op(ALOAD_0);
+        code.op(ALOAD_1);
+        pushInt(address);
+        pushInt(line);
+        invoke(INVOKEVIRTUAL, BASE_CLASS, "read", HELPER_READ);
+    }
+
+    private boolean checkOverflow(int line) {
+        return (program.verified[line] & ProgramVerifier.NO_OVERFLOW) == 0;
+    }
+
+    private void beginArith(int line) { // this for the range check, unless ValueRanges proved the result fits
+        if (checkOverflow(line))
+            code.op(ALOAD_0);
+    }
+
+    private void endArith(int line) {
+        if (checkOverflow(line)) {
+            pushInt(line);
+            invoke(INVOKEVIRTUAL, BASE_CLASS, "arith", "(JI)J");
+        }
+    }
+
+    private void branch(int jumpOp, int line) {
+        int target = program.target[line];
+        int label = (idioms.isHead(target) && idioms.getTail(target) == line) ? loopBody[target] : target; // going around doesn't retry the bulk run
+        if (target >= 0 && target <= line) {
+            int stub = code.newLabel();
+            backwardStubs.add(new int[]{stub, line, target, label});
+            code.jump(jumpOp, stub);
+        } else if (target >= 0 && target < programSize)
+            code.jump(jumpOp, label);
+        else {
+            int stub = code.newLabel();
+            missingStubs.add(new int[]{stub, target, line});
+            code.jump(jumpOp, stub);
+        }
+    }
+
+    private void unsupported(int digit, int line) {
+        code.op(ALOAD_0);
+        pushInt(digit);
+        pushInt(line);
+        invoke(INVOKEVIRTUAL, BASE_CLASS, "unsupported", FAULT_DESCRIPTOR);
+        code.op(ATHROW);
+    }
+
+    private void saveCount() {
+        code.op(ALOAD_0);
+        code.op(LLOAD_3);
+        code.u2Op(PUTFIELD, pool.fieldRef(BASE_CLASS, "instructionCount", "J"));
+    }
+
+    private void emitMissing(int line, int from) {
+        code.op(ALOAD_0);
+        pushInt(line);
+        pushInt(from);
+        invoke(INVOKEVIRTUAL, BASE_CLASS, "missing", FAULT_DESCRIPTOR);
+        code.op(ATHROW);
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5)
+            code.op(ICONST_0 + value);
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.op(BIPUSH);
+            code.u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            code.u2Op(SIPUSH, value);
+        else
+            code.u2Op(LDC_W, pool.integer(value));
+    }
+
+    private void invoke(int op, String owner, String name, String descriptor) {
+        code.u2Op(op, pool.methodRef(owner, name, descriptor));
+    }
+
+    private byte[] writeClass(String name) throws IOException {
+        int thisClass = pool.classRef(name);
+        int superClass = pool.classRef(BASE_CLASS);
+        int codeName = pool.utf8("Code");
+        int initName = pool.utf8("<init>"), initDescriptor = pool.utf8("()V");
+        int superInit = pool.methodRef(BASE_CLASS, "<init>", "()V");
+        int executeName = pool.utf8("execute"), executeDescriptor = pool.utf8("([JI)I");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49); // Java 5 class files are verified without stack map frames
+        pool.writeTo(out);
+        out.writeShort(0x0031); // public final super
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0); // interfaces
+        out.writeShort(0); // fields
+        out.writeShort(2); // methods
+
+        // public <init>() { super(); }
+        out.writeShort(0x0001);
+        out.writeShort(initName);
+        out.writeShort(initDescriptor);
+        writeCode(out, codeName, 1, 1, new byte[]{(byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (superInit >> 8), (byte) superInit, (byte) RETURN}, null);
+
+        // public int execute(long[] data, int start)
+        out.writeShort(0x0001);
+        out.writeShort(executeName);
+        out.writeShort(executeDescriptor);
+        writeCode(out, codeName, 16, 5, code.toByteArray(), new int[]{countedStart, countHandler, countHandler});
+
+        out.writeShort(0); // attributes
+        return bytes.toByteArray();
+    }
+
+    private static void writeCode(DataOutputStream out, int codeName, int maxStack, int maxLocals, byte[] bytecode, int[] catchAll) throws IOException {
+        // catchAll is {start, end, handler} of a handler for any throwable, or null
+        out.writeShort(1); // attributes
+        out.writeShort(codeName);
+        out.writeInt(12 + bytecode.length + ((catchAll == null) ? 0 : 8));
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+
+        if (catchAll == null)
+            out.writeShort(0); // exception table
+        else {
+            out.writeShort(1);
+            out.writeShort(catchAll[0]);
+            out.writeShort(catchAll[1]);
+            out.writeShort(catchAll[2]);
+            out.writeShort(0);
+        }
+
+        out.writeShort(0); // code attributes
+    }
+
+    private static final class ProgramKey { // everything the generated code depends on
+        private final int[] content;
+        private final int hash;
+
+        ProgramKey(DecodedProgram program, int programSize) {
+            int[][] columns = {program.opcodes, program.opn1, program.opn2, program.opn3,
+                    program.addr1, program.addr2, program.addr3, program.target, program.bound, program.verified};
+
+            content = new int[columns.length * programSize];
+            for (int i = 0; i < columns.length; i++)
+                System.arraycopy(columns[i], 0, content, i * programSize, programSize);
+
+            hash = Arrays.hashCode(content);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ProgramKey && hash == ((ProgramKey) o).hash && Arrays.equals(content, ((ProgramKey) o).content);
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+    }
+
+    private static final class Loader extends ClassLoader { // one per compiled program, so it can be unloaded with it
+        Loader() {
+            super(ProgramCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            Integer index = entries.get("U" + value);
+            if (index != null)
+                return index;
+
+            try {
+                out.writeByte(1);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // can't happen on a byte array
+            }
+            return add("U" + value);
+        }
+
+        int classRef(String internalName) {
+            return reference("C" + internalName, 7, utf8(internalName), -1);
+        }
+
+        int integer(int value) {
+            Integer index = entries.get("I" + value);
+            if (index != null)
+                return index;
+
+            try {
+                out.writeByte(3);
+                out.writeInt(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return add("I" + value);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameAndType = reference("N" + name + ":" + descriptor, 12, utf8(name), utf8(descriptor));
+            return reference("M" + owner + "." + name + ":" + descriptor, 10, ownerIndex, nameAndType);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameAndType = reference("N" + name + ":" + descriptor, 12, utf8(name), utf8(descriptor));
+            return reference("F" + owner + "." + name + ":" + descriptor, 9, ownerIndex, nameAndType);
+        }
+
+        private int reference(String key, int tag, int first, int second) {
+            Integer index = entries.get(key);
+            if (index != null)
+                return index;
+
+            try {
+                out.writeByte(tag);
+                out.writeShort(first);
+                if (second != -1)
+                    out.writeShort(second);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return add(key);
+        }
+
+        private int add(String key) {
+            entries.put(key, count);
+            return count++;
+        }
+
+        void writeTo(DataOutputStream classOut) throws IOException {
+            classOut.writeShort(count);
+            bytes.writeTo(classOut);
+        }
+    }
+
+    private static final class Code {
+        private byte[] buffer = new byte[1024];
+        private int length;
+        private int[] labels = new int[64];
+        private int labelCount;
+        private final List<int[]> fixups = new ArrayList<>(); // {instruction, offset position, label, offset size}
+
+        void u1(int value) {
+            if (length == buffer.length) {
+                byte[] larger = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, larger, 0, length);
+                buffer = larger;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        void op(int opcode) {
+            u1(opcode);
+        }
+
+        void u2Op(int opcode, int operand) {
+            u1(opcode);
+            u1(operand >> 8);
+            u1(operand);
+        }
+
+        void u4(int value) {
+            u1(value >> 24);
+            u1(value >> 16);
+            u1(value >> 8);
+            u1(value);
+        }
+
+        int length() {
+            return length;
+        }
+
+        int newLabel() {
+            if (labelCount == labels.length) {
+                int[] larger = new int[labels.length * 2];
+                System.arraycopy(labels, 0, larger, 0, labelCount);
+                labels = larger;
+            }
+            labels[labelCount] = -1;
+            return labelCount++;
+        }
+
+        void mark(int label) {
+            labels[label] = length;
+        }
+
+        void jump(int opcode, int label) {
+            fixups.add(new int[]{length, length + 1, label, 2});
+            u2Op(opcode, 0);
+        }
+
+        void tableSwitch(int cases, int defaultLabel) { // case i jumps to label i
+            int instruction = length;
+            u1(TABLESWITCH);
+            while (length % 4 != 0)
+                u1(0);
+
+            fixups.add(new int[]{instruction, length, defaultLabel, 4});
+            u4(0);
+            u4(0);
+            u4(cases - 1);
+            for (int i = 0; i < cases; i++) {
+                fixups.add(new int[]{instruction, length, i, 4});
+                u4(0);
+            }
+        }
+
+        void resolve() throws IOException {
+            for (int[] fixup : fixups) {
+                int offset = labels[fixup[2]] - fixup[0];
+                if (fixup[3] == 2) {
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                        throw new IOException("Branch offset too large");
+
+                    buffer[fixup[1]] = (byte) (offset >> 8);
+                    buffer[fixup[1] + 1] = (byte) offset;
+                } else {
+                    buffer[fixup[1]] = (byte) (offset >> 24);
+                    buffer[fixup[1] + 1] = (byte) (offset >> 16);
+                    buffer[fixup[1] + 2] = (byte) (offset >> 8);
+                    buffer[fixup[1] + 3] = (byte) offset;
+                }
+            }
+
+            if (length > 65535)
+                throw new IOException("Method too large");
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[length];
+            System.arraycopy(buffer, 0, bytes, 0, length);
+            return bytes;
+        }
+    }
+}
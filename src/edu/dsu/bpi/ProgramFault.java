@@ -0,0 +1,54 @@
+package edu.dsu.bpi;
+
+/**
+ * A runtime fault raised by any tier. Faults are common (every failing submission ends in one), so
+ * this carries a Fault and its details instead of a stack trace and a message; the message is only
+ * formatted when it's asked for, and reads exactly like the interpreter's messages always have.
+ */
+public final class ProgramFault extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    private final Fault fault;
+    private final long detail1, detail2;
+    private int line = -1; // program line that faulted, -1 until the engine locates it (and for a missing line)
+    private int[] fileLines; // file line of each program line, for the load the fault happened in
+    private String fileName;
+    private String message;
+
+    ProgramFault(Fault fault, long detail1, long detail2) {
+        super(null, null, false, false); // no stack trace
+        this.fault = fault;
+        this.detail1 = detail1;
+        this.detail2 = detail2;
+    }
+
+    ProgramFault(Fault fault, long detail1) {
+        this(fault, detail1, 0);
+    }
+
+    ProgramFault locate(int line, int[] fileLines, String fileName) { // a missing line is reported without one
+        if (fault != Fault.MISSING_LINE) {
+            this.line = line;
+            this.fileLines = fileLines;
+            this.fileName = fileName;
+        }
+
+        return this;
+    }
+
+    public Fault getFault() { return fault; }
+    public long getDetail1() { return detail1; }
+    public long getDetail2() { return detail2; }
+    public int getLine() { return line; }
+    public int getFileLine() { return (line == -1) ? -1 : fileLines[line]; }
+    public String getFileName() { return fileName; }
+    public String getFaultMessage() { return fault.format(detail1, detail2); }
+
+    @Override
+    public String getMessage() {
+        if (message == null)
+            message = (line == -1) ? getFaultMessage() : getFaultMessage() + " (line " + fileLines[line] + " of " + fileName + ")";
+
+        return message;
+    }
+}
@@ -0,0 +1,70 @@
+package edu.dsu.bpi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks a loaded program before it runs and records which guarantees hold for each line, so the
+ * engine only has to check at runtime what couldn't be proven here. A line that fails a check still
+ * loads and faults exactly as before if it runs; the problem is also reported as a load warning.
+ */
+public final class ProgramVerifier {
+    // guarantees recorded per line
+    public static final int OPCODE = 1; // the operation is supported
+    public static final int ADDRESSES = 2; // every direct data operand is inside memory (computed +6/-6 indices are never proven)
+    public static final int TARGET = 4; // a branch goes to a line with a card
+    public static final int NEXT = 8; // falling through reaches a line with a card, or the line ends the program
+    public static final int SAFE = OPCODE | ADDRESSES | TARGET | NEXT;
+    public static final int INITIALIZED = 16; // a direct read of operand 1 always finds the location initialized (shifted left for 2 and 3)
+    public static final int NO_OVERFLOW = 128; // the arithmetic result always fits in 10 digits
+
+    private ProgramVerifier() {}
+
+    public static int initialized(int operand) { return INITIALIZED << (operand - 1); }
+
+    public static List<String> verify(DecodedProgram program, int programSize, long[] data,
+                                      Map<Integer, Integer> programLineMap, String fileName) { // returns load warnings
+        List<String> warnings = new ArrayList<>();
+        int memorySize = data.length;
+
+        for (int i = 0; i < programSize; i++) {
+            int opcode = program.opcodes[i];
+            int verified = 0;
+            String suffix = " (line " + programLineMap.get(i) + " of " + fileName + ")";
+
+            if (opcode == Opcode.UNSUPPORTED_0 || opcode == Opcode.UNSUPPORTED_9 || opcode == Opcode.LABEL)
+                warnings.add("Unsupported operation " + ((opcode == Opcode.UNSUPPORTED_0) ? "-0" : (opcode == Opcode.LABEL) ? "-7" : "-9") + " will halt the program if it runs" + suffix);
+            else
+                verified |= OPCODE;
+
+            int[] addresses = {program.addr1[i], program.addr2[i], program.addr3[i]};
+            boolean inRange = true;
+            for (int operand = 1; operand <= 3; operand++) {
+                int address = addresses[operand - 1];
+                if (Opcode.usesDataOperand(opcode, operand) && (address < 0 || address >= memorySize)) {
+                    warnings.add("Data address " + address + " exceeds memory range of " + (memorySize - 1) + suffix);
+                    inRange = false;
+                }
+            }
+            if (inRange)
+                verified |= ADDRESSES;
+
+            if (Opcode.isBranch(opcode) && (program.target[i] < 0 || program.target[i] >= programSize))
+                warnings.add("Branch to program line " + program.target[i] + ", which has not been set" + suffix);
+            else
+                verified |= TARGET;
+
+            if (i + 1 < programSize || (opcode == Opcode.HALT && i > 0) || (verified & OPCODE) == 0)
+                verified |= NEXT; // an unsupported operation never falls through
+            else
+                warnings.add("Program line " + (i + 1) + " has not been set. Missing end card?" + suffix);
+
+            program.verified[i] = verified;
+        }
+
+        boolean[] offsetInRange = ValueRanges.analyze(program, programSize, data);
+        DefiniteInitialization.analyze(program, programSize, data, offsetInRange, programLineMap, fileName, warnings);
+        return warnings;
+    }
+}
@@ -0,0 +1,75 @@
+package edu.dsu.bpi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static edu.dsu.bpi.StateMonitorReader.*;
+
+/**
+ * Publishes interpreter state to a memory-mapped file in the layout StateMonitorReader documents.
+ * The interpreter keeps running on its own arrays, so execution is unchanged; the direct words are
+ * copied into the file in bulk at steps, pauses and every so many backward branches. The input deck
+ * only changes when a program is loaded, so it's only copied then.
+ */
+final class StateMonitor {
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final LongBuffer words; // data, then input
+    private final int dataWords;
+    private long sequence;
+
+    StateMonitor(File monitorFile, int dataWords, int inputCards) throws IOException {
+        this.dataWords = dataWords;
+        long size = HEADER_SIZE + 8L * (dataWords + inputCards);
+        file = new RandomAccessFile(monitorFile, "rw");
+        try {
+            file.setLength(size);
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_SIZE);
+        words = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+
+        buffer.putLong(SEQUENCE, sequence = 1); // a reader that opens the file before the first snapshot waits
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, dataWords);
+        buffer.putInt(12, inputCards);
+    }
+
+    void publishInput(long[] input, int inputSize) { // the deck of a newly loaded program, the rest of the state follows with publish
+        if ((sequence & 1) == 0)
+            buffer.putLong(SEQUENCE, ++sequence); // left odd until publish finishes the snapshot
+
+        words.position(dataWords);
+        words.put(input, 0, words.remaining());
+        buffer.putInt(INPUT_SIZE, inputSize);
+    }
+
+    void publish(int state, long[] data, int instructionPointer, int inputPointer, long instructionCount) {
+        if ((sequence & 1) == 0)
+            buffer.putLong(SEQUENCE, ++sequence);
+
+        buffer.putInt(STATE, state);
+        buffer.putInt(INSTRUCTION_POINTER, instructionPointer);
+        buffer.putInt(INPUT_POINTER, inputPointer);
+        buffer.putLong(INSTRUCTIONS, instructionCount);
+        buffer.putLong(PUBLISHED, System.currentTimeMillis());
+        words.position(0);
+        words.put(data, 0, dataWords);
+        buffer.putLong(SEQUENCE, ++sequence);
+    }
+
+    void close() throws IOException {
+        file.close(); // the mapping stays valid until it's collected, the reader can still see the last snapshot
+    }
+}
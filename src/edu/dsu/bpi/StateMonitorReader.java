@@ -0,0 +1,131 @@
+package edu.dsu.bpi;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the state an interpreter publishes to a monitor file (Interpreter.setMonitorFile), from
+ * another thread or another process, without stopping the program. The file is little-endian:
+ *
+ *   0  int   magic, the bytes "BPIM"
+ *   4  int   layout version (VERSION)
+ *   8  int   data words in the file (the directly addressable words of the profile)
+ *  12  int   input cards in the file
+ *  16  long  sequence number, odd while a snapshot is being written
+ *  24  int   state (LOADED, RUNNING, STOPPED, HALTED or FAULTED)
+ *  28  int   instruction pointer
+ *  32  int   input pointer
+ *  36  int   input cards loaded
+ *  40  long  instructions run since the program was loaded or reset
+ *  48  long  System.currentTimeMillis() when the snapshot was published
+ *  56  long  data words, then input cards, Long.MIN_VALUE where uninitialized
+ *
+ * A snapshot is consistent if the sequence number is even and the same before and after it's copied.
+ * Paged memory past the direct words isn't published.
+ */
+public final class StateMonitorReader implements Closeable {
+    public static final int MAGIC = 0x4D495042, VERSION = 1;
+    public static final int LOADED = 0, RUNNING = 1, STOPPED = 2, HALTED = 3, FAULTED = 4;
+    private static final String[] STATE_NAMES = { "loaded", "running", "stopped", "halted", "faulted" };
+
+    static final int SEQUENCE = 16, STATE = 24, INSTRUCTION_POINTER = 28, INPUT_POINTER = 32, INPUT_SIZE = 36;
+    static final int INSTRUCTIONS = 40, PUBLISHED = 48, HEADER_SIZE = 56;
+    private static final int MAX_TRIES = 1000; // the writer only holds a snapshot odd for a few microseconds
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final LongBuffer words; // data, then input
+    private final long[] data, input;
+    private int state, instructionPointer, inputPointer, inputSize;
+    private long instructionCount, published;
+
+    public StateMonitorReader(File monitorFile) throws IOException {
+        file = new RandomAccessFile(monitorFile, "r");
+        try {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+                throw new IOException(monitorFile + " isn't an interpreter monitor file");
+            if (buffer.getInt(4) != VERSION)
+                throw new IOException(monitorFile + " has layout version " + buffer.getInt(4) + ", this reader only knows version " + VERSION);
+
+            data = new long[buffer.getInt(8)];
+            input = new long[buffer.getInt(12)];
+            if (buffer.capacity() < HEADER_SIZE + 8L * (data.length + input.length))
+                throw new IOException(monitorFile + " is shorter than its header says");
+
+            buffer.position(HEADER_SIZE);
+            words = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public boolean refresh() { // copies the latest consistent snapshot, false if the writer never let go long enough
+        for (int i = 0; i < MAX_TRIES; i++) {
+            long sequence = buffer.getLong(SEQUENCE);
+            if ((sequence & 1) != 0)
+                continue;
+
+            state = buffer.getInt(STATE);
+            instructionPointer = buffer.getInt(INSTRUCTION_POINTER);
+            inputPointer = buffer.getInt(INPUT_POINTER);
+            inputSize = buffer.getInt(INPUT_SIZE);
+            instructionCount = buffer.getLong(INSTRUCTIONS);
+            published = buffer.getLong(PUBLISHED);
+            words.position(0);
+            words.get(data);
+            words.get(input);
+
+            if (buffer.getLong(SEQUENCE) == sequence)
+                return true;
+        }
+
+        return false;
+    }
+
+    public int getState() { return state; }
+    public String getStateName() { return STATE_NAMES[state]; }
+    public int getInstructionPointer() { return instructionPointer; }
+    public int getInputPointer() { return inputPointer; }
+    public int getInputSize() { return inputSize; }
+    public long getInstructionCount() { return instructionCount; }
+    public long getPublished() { return published; }
+    public int getDataWords() { return data.length; }
+    public long getData(int address) { return data[address]; }
+    public int getInputCards() { return input.length; }
+    public long getInput(int card) { return input[card]; }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    public static void main(String[] args) throws Exception { // prints the current snapshot of a monitor file
+        if (args.length != 1) {
+            System.out.println("Usage: StateMonitorReader \"monitor file\"");
+            return;
+        }
+
+        try (StateMonitorReader reader = new StateMonitorReader(new File(args[0]))) {
+            if (!reader.refresh()) {
+                System.out.println("The interpreter is publishing too often to read a consistent snapshot");
+                return;
+            }
+
+            System.out.println("State: " + reader.getStateName() + ", row " + reader.getInstructionPointer() + ", input card "
+                    + reader.getInputPointer() + " of " + reader.getInputSize() + ", " + reader.getInstructionCount() + " instructions");
+            for (int i = 0; i < reader.getDataWords(); i++) {
+                if (reader.getData(i) != Long.MIN_VALUE)
+                    System.out.println("data[" + i + "] = " + reader.getData(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package edu.dsu.bpi;
+
+public final class StepEvent {
+    int line, opcode, opn1, opn2, opn3;
+    long value1, value2, value3; // values read through opn1..opn3 (after the write for +7)
+    long result; // value written by the instruction
+    boolean branchTaken;
+    int branchLine; // line a label resolves to, -1 when branching to a raw line
+    int writtenAddress, readInputCard;
+
+    StepEvent() {}
+
+    void begin(int line, int opcode, int opn1, int opn2, int opn3) {
+        this.line = line;
+        this.opcode = opcode;
+        this.opn1 = opn1;
+        this.opn2 = opn2;
+        this.opn3 = opn3;
+        value1 = value2 = value3 = result = 0L;
+        branchTaken = false;
+        branchLine = -1;
+        writtenAddress = -1;
+        readInputCard = -1;
+    }
+
+    public int getLine() { return line; }
+    public int getOpcode() { return opcode; }
+    public int getOpn1() { return opn1; }
+    public int getOpn2() { return opn2; }
+    public int getOpn3() { return opn3; }
+
+    public long getValue1() { return value1; }
+    public long getValue2() { return value2; }
+    public long getValue3() { return value3; }
+    public long getResult() { return result; }
+
+    public boolean getBranchTaken() { return branchTaken; }
+    public int getBranchLine() { return branchLine; }
+    public int getWrittenAddress() { return writtenAddress; }
+    public int getReadInputCard() { return readInputCard; }
+
+    public Instruction getInstruction() {
+        return new Instruction(Opcode.isPositive(opcode), Opcode.getOp(opcode), opn1, opn2, opn3);
+    }
+}
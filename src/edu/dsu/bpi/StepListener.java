@@ -0,0 +1,5 @@
+package edu.dsu.bpi;
+
+public interface StepListener {
+    void stepExecuted(StepEvent event); // the event is reused for every step, copy anything that must outlive the call
+}
@@ -0,0 +1,16 @@
+package edu.dsu.bpi;
+
+public enum Tier {
+    INTERPRETER("Interpreter"),
+    CLOSURE("Closure"),
+    COMPILED("Compiled");
+
+    private final String name;
+
+    Tier(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() { return name; }
+}
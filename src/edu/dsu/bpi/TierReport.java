@@ -0,0 +1,45 @@
+package edu.dsu.bpi;
+
+public final class TierReport { // instructions run by each tier since the program was loaded or reset
+    final long[] counts = new long[Tier.values().length];
+    int promotionLine = -1; // line of the backward branch that promoted the program, -1 if it wasn't promoted
+    Tier promotedTier;
+
+    TierReport() {}
+
+    void clear() {
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = 0;
+
+        promotionLine = -1;
+        promotedTier = null;
+    }
+
+    public long getInstructionCount(Tier tier) { return counts[tier.ordinal()]; }
+    public int getPromotionLine() { return promotionLine; }
+    public Tier getPromotedTier() { return promotedTier; }
+
+    public long getTotalInstructionCount() {
+        long total = 0;
+        for (long count : counts)
+            total += count;
+
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Tier tier : Tier.values())
+            sb.append(tier).append(": ").append(counts[tier.ordinal()]).append(" instructions").append(System.getProperty("line.separator"));
+
+        if (promotedTier == null)
+            sb.append("Not promoted");
+        else if (promotionLine == -1)
+            sb.append("Promoted to ").append(promotedTier).append(" before running");
+        else
+            sb.append("Promoted to ").append(promotedTier).append(" at line ").append(promotionLine);
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,395 @@
+package edu.dsu.bpi;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Interval analysis of the values in data locations used as direct operands. Data cards give exact
+ * starting values, input cards and array loads are unknown, and compare and +7 branches narrow the
+ * intervals on each edge, so loop counters stay bounded by their limits. Arithmetic whose result
+ * interval provably stays inside the 10-digit range is marked NO_OVERFLOW for the engine.
+ */
+final class ValueRanges {
+    private static final long MAX = 9999999999L;
+    private static final int WIDEN_AFTER = 3; // visits of a line before its intervals are widened
+    private static final int NARROW_PASSES = 3;
+    private static final long MAX_STATE_WORDS = 1 << 22; // skip the analysis for programs too large to keep one state per line
+
+    private final DecodedProgram program;
+    private final int programSize;
+    private final int[] slotOf; // tracked slot of each memory location, -1 if it's only ever reached through an array
+    private final int slots;
+    private final long[] entryLo, entryHi; // state at line 0
+    private long[][] lo, hi; // interval of each slot on entry to each line, null if the line is unreachable
+    private final int[] visits;
+    private final boolean[] offsetInRange; // -6 lines whose index is never negative, even after the cast to an int
+
+    private ValueRanges(DecodedProgram program, int programSize, long[] data) {
+        this.program = program;
+        this.programSize = programSize;
+
+        slotOf = new int[data.length];
+        for (int i = 0; i < slotOf.length; i++)
+            slotOf[i] = -1;
+
+        int count = 0;
+        for (int line = 0; line < programSize; line++) {
+            int opcode = program.opcodes[line];
+            for (int operand = 1; operand <= 3; operand++) {
+                int address = address(line, operand);
+                if (Opcode.usesDataOperand(opcode, operand) && Opcode.getArrayOperand(opcode) != operand
+                        && address >= 0 && address < slotOf.length && slotOf[address] == -1)
+                    slotOf[address] = count++;
+            }
+        }
+        slots = count;
+
+        entryLo = new long[slots];
+        entryHi = new long[slots];
+        for (int address = 0; address < slotOf.length; address++) {
+            int slot = slotOf[address];
+            if (slot == -1)
+                continue;
+
+            if (data[address] == Long.MIN_VALUE) { // uninitialized, empty until something is written
+                entryLo[slot] = Long.MAX_VALUE;
+                entryHi[slot] = Long.MIN_VALUE;
+            } else
+                entryLo[slot] = entryHi[slot] = data[address];
+        }
+
+        lo = new long[programSize][];
+        hi = new long[programSize][];
+        visits = new int[programSize];
+        offsetInRange = new boolean[programSize];
+    }
+
+    // returns the -6 lines whose offset is never negative, or null if nothing could be proven
+    static boolean[] analyze(DecodedProgram program, int programSize, long[] data) {
+        for (int line = 0; line < programSize; line++) {
+            if ((program.verified[line] & ProgramVerifier.ADDRESSES) == 0)
+                return null; // every direct operand needs a location to track
+        }
+
+        ValueRanges ranges = new ValueRanges(program, programSize, data);
+        if ((long) ranges.slots * programSize * 2 > MAX_STATE_WORDS)
+            return null; // nothing is proven, every check stays
+
+        ranges.solve();
+        for (int i = 0; i < NARROW_PASSES; i++)
+            ranges.narrow();
+        ranges.record();
+        return ranges.offsetInRange;
+    }
+
+    private void solve() { // widening iteration to a sound fixpoint
+        Deque<Integer> worklist = new ArrayDeque<>();
+        lo[0] = entryLo.clone();
+        hi[0] = entryHi.clone();
+        worklist.add(0);
+
+        long[][] out = new long[4][]; // {fallthrough lo, hi, taken lo, hi}
+        while (!worklist.isEmpty()) {
+            int line = worklist.poll();
+            transfer(line, lo[line], hi[line], out, false);
+
+            if (out[0] != null && line + 1 < programSize && merge(line + 1, out[0], out[1]))
+                worklist.add(line + 1);
+
+            int target = program.target[line];
+            if (out[2] != null && target >= 0 && target < programSize && merge(target, out[2], out[3]))
+                worklist.add(target);
+        }
+    }
+
+    private void narrow() { // re-apply every transfer without widening, tightening what widening gave up
+        long[][] newLo = new long[programSize][], newHi = new long[programSize][];
+        newLo[0] = entryLo.clone();
+        newHi[0] = entryHi.clone();
+
+        long[][] out = new long[4][];
+        for (int line = 0; line < programSize; line++) {
+            if (lo[line] == null)
+                continue;
+
+            transfer(line, lo[line], hi[line], out, false);
+            if (out[0] != null && line + 1 < programSize)
+                join(newLo, newHi, line + 1, out[0], out[1]);
+
+            int target = program.target[line];
+            if (out[2] != null && target >= 0 && target < programSize)
+                join(newLo, newHi, target, out[2], out[3]);
+        }
+
+        lo = newLo;
+        hi = newHi;
+    }
+
+    private void record() {
+        long[][] out = new long[4][];
+        for (int line = 0; line < programSize; line++) {
+            if (lo[line] != null)
+                transfer(line, lo[line], hi[line], out, true);
+        }
+    }
+
+    private boolean merge(int line, long[] outLo, long[] outHi) { // join into a line's entry state, returns true if it grew
+        if (lo[line] == null) {
+            lo[line] = outLo.clone();
+            hi[line] = outHi.clone();
+            return true;
+        }
+
+        boolean widen = ++visits[line] > WIDEN_AFTER, changed = false;
+        for (int s = 0; s < slots; s++) {
+            if (outLo[s] > outHi[s])
+                continue; // empty on this edge
+
+            boolean empty = lo[line][s] > hi[line][s];
+            if (empty || outLo[s] < lo[line][s]) {
+                lo[line][s] = (widen && !empty) ? widenDown(outLo[s]) : outLo[s];
+                changed = true;
+            }
+            if (empty || outHi[s] > hi[line][s]) {
+                hi[line][s] = (widen && !empty) ? widenUp(outHi[s]) : outHi[s];
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private void join(long[][] toLo, long[][] toHi, int line, long[] outLo, long[] outHi) {
+        if (toLo[line] == null) {
+            toLo[line] = outLo.clone();
+            toHi[line] = outHi.clone();
+            return;
+        }
+
+        for (int s = 0; s < slots; s++) {
+            toLo[line][s] = Math.min(toLo[line][s], outLo[s]);
+            toHi[line][s] = Math.max(toHi[line][s], outHi[s]);
+        }
+    }
+
+    private static long widenDown(long value) { return (value >= 0) ? 0 : (value >= -MAX) ? -MAX : Long.MIN_VALUE; }
+    private static long widenUp(long value) { return (value <= 0) ? 0 : (value <= MAX) ? MAX : Long.MAX_VALUE; }
+
+    // Computes the states leaving a line: out[0..1] falling through, out[2..3] branching (null when that edge can't be taken)
+    private void transfer(int line, long[] inLo, long[] inHi, long[][] out, boolean record) {
+        int opcode = program.opcodes[line];
+        long[] l = inLo.clone(), h = inHi.clone();
+        out[0] = out[1] = out[2] = out[3] = null;
+
+        int s1 = slot(line, 1), s2 = slot(line, 2), s3 = slot(line, 3);
+        long resultLo = 0, resultHi = 0;
+
+        for (int operand = 1; operand <= 3; operand++) {
+            int s = slot(line, operand);
+            if (Opcode.readsOperand(opcode, operand) && l[s] > h[s])
+                return; // reads a location that's uninitialized on every path here, so it faults
+        }
+
+        switch (opcode) {
+            case Opcode.MOVE:
+                assign(l, h, s3, l[s1], h[s1]);
+                break;
+            case Opcode.ADD:
+                resultLo = add(l[s1], l[s2]);
+                resultHi = add(h[s1], h[s2]);
+                break;
+            case Opcode.SUBTRACT:
+                resultLo = add(l[s1], negate(h[s2]));
+                resultHi = add(h[s1], negate(l[s2]));
+                break;
+            case Opcode.MULTIPLY: {
+                long a = multiply(l[s1], l[s2]), b = multiply(l[s1], h[s2]), c = multiply(h[s1], l[s2]), d = multiply(h[s1], h[s2]);
+                resultLo = Math.min(Math.min(a, b), Math.min(c, d));
+                resultHi = Math.max(Math.max(a, b), Math.max(c, d));
+                break;
+            }
+            case Opcode.SQUARE: {
+                long a = multiply(l[s1], l[s1]), b = multiply(h[s1], h[s1]);
+                resultLo = (l[s1] <= 0 && h[s1] >= 0) ? 0 : Math.min(a, b);
+                resultHi = Math.max(a, b);
+                break;
+            }
+            case Opcode.DIVIDE: { // the quotient is never larger than the dividend
+                long magnitude = Math.max(Math.abs(Math.max(l[s1], -Long.MAX_VALUE)), Math.abs(Math.max(h[s1], -Long.MAX_VALUE)));
+                resultLo = -magnitude;
+                resultHi = magnitude;
+                break;
+            }
+            case Opcode.ROOT:
+                resultLo = 0;
+                resultHi = (h[s1] <= 0) ? 0 : (long) Math.sqrt(h[s1]);
+                break;
+            case Opcode.EQUAL:
+            case Opcode.UNEQUAL:
+            case Opcode.GREATER_THAN_EQUAL:
+            case Opcode.LESS_THAN:
+                branch(opcode, l, h, s1, s2, out);
+                return;
+            case Opcode.INCREMENT_AND_TEST: // the counter isn't range checked
+                assign(l, h, s1, add(l[s1], 1), add(h[s1], 1));
+                branch(Opcode.LESS_THAN, l, h, s1, s2, out);
+                return;
+            case Opcode.FROM_ARRAY:
+                assign(l, h, s3, Long.MIN_VALUE, Long.MAX_VALUE);
+                break;
+            case Opcode.TO_ARRAY: { // the stored value may land on any location the index reaches
+                // labels only bound the offset from above, a negative one (or one that wraps in the cast to an int) writes below the symbol
+                int base = program.addr2[line], bound = program.bound[line];
+                boolean inRange = l[s3] >= 0 && h[s3] <= Integer.MAX_VALUE;
+                int start = (inRange) ? (int) Math.min(slotOf.length, base + l[s3]) : 0;
+                int end = (inRange) ? (int) Math.min(slotOf.length, base + Math.min(h[s3], bound - 1L) + 1) : slotOf.length;
+                if (record)
+                    offsetInRange[line] = inRange;
+                for (int address = start; address < end; address++) {
+                    int s = slotOf[address];
+                    if (s != -1 && l[s1] <= h[s1]) {
+                        l[s] = Math.min(l[s], l[s1]);
+                        h[s] = Math.max(h[s], h[s1]);
+                    }
+                }
+                break;
+            }
+            case Opcode.READ:
+                assign(l, h, s3, -MAX, MAX);
+                break;
+            case Opcode.HALT:
+                if (line > 0)
+                    return; // the program ends here
+                break;
+            case Opcode.UNSUPPORTED_0:
+            case Opcode.LABEL:
+            case Opcode.UNSUPPORTED_9:
+                return; // always faults
+        }
+
+        switch (opcode) {
+            case Opcode.ADD:
+            case Opcode.SUBTRACT:
+            case Opcode.MULTIPLY:
+            case Opcode.SQUARE:
+            case Opcode.DIVIDE:
+            case Opcode.ROOT:
+                if (record && resultLo >= -MAX && resultHi <= MAX)
+                    program.verified[line] |= ProgramVerifier.NO_OVERFLOW;
+
+                // only results inside the range are stored, anything else faults
+                assign(l, h, s3, Math.max(resultLo, -MAX), Math.min(resultHi, MAX));
+                if (l[s3] > h[s3])
+                    return;
+                break;
+        }
+
+        out[0] = l;
+        out[1] = h;
+    }
+
+    private void branch(int opcode, long[] l, long[] h, int a, int b, long[][] out) {
+        long[] takenLo = l.clone(), takenHi = h.clone();
+        boolean taken, notTaken;
+        switch (opcode) {
+            case Opcode.EQUAL:
+                taken = equal(takenLo, takenHi, a, b);
+                notTaken = unequal(l, h, a, b);
+                break;
+            case Opcode.UNEQUAL:
+                taken = unequal(takenLo, takenHi, a, b);
+                notTaken = equal(l, h, a, b);
+                break;
+            case Opcode.GREATER_THAN_EQUAL:
+                taken = atLeast(takenLo, takenHi, a, b);
+                notTaken = lessThan(l, h, a, b);
+                break;
+            default: // LESS_THAN
+                taken = lessThan(takenLo, takenHi, a, b);
+                notTaken = atLeast(l, h, a, b);
+                break;
+        }
+
+        if (notTaken) {
+            out[0] = l;
+            out[1] = h;
+        }
+        if (taken) {
+            out[2] = takenLo;
+            out[3] = takenHi;
+        }
+    }
+
+    // Each refinement narrows the intervals to the values where the test holds, returns false if it never does
+    private static boolean lessThan(long[] l, long[] h, int a, int b) {
+        if (a == b)
+            return false;
+
+        h[a] = Math.min(h[a], add(h[b], -1));
+        l[b] = Math.max(l[b], add(l[a], 1));
+        return l[a] <= h[a] && l[b] <= h[b];
+    }
+
+    private static boolean atLeast(long[] l, long[] h, int a, int b) {
+        if (a == b)
+            return true;
+
+        l[a] = Math.max(l[a], l[b]);
+        h[b] = Math.min(h[b], h[a]);
+        return l[a] <= h[a] && l[b] <= h[b];
+    }
+
+    private static boolean equal(long[] l, long[] h, int a, int b) {
+        l[a] = l[b] = Math.max(l[a], l[b]);
+        h[a] = h[b] = Math.min(h[a], h[b]);
+        return l[a] <= h[a];
+    }
+
+    private static boolean unequal(long[] l, long[] h, int a, int b) {
+        return a != b && !(l[a] == h[a] && l[b] == h[b] && l[a] == l[b]);
+    }
+
+    private static void assign(long[] l, long[] h, int slot, long low, long high) {
+        l[slot] = low;
+        h[slot] = high;
+    }
+
+    private static long add(long a, long b) { // saturates instead of wrapping
+        long result = a + b;
+        if (((a ^ result) & (b ^ result)) < 0)
+            return (a < 0) ? Long.MIN_VALUE : Long.MAX_VALUE;
+
+        return result;
+    }
+
+    private static long negate(long a) {
+        return (a == Long.MIN_VALUE) ? Long.MAX_VALUE : -a;
+    }
+
+    private static long multiply(long a, long b) { // saturates instead of wrapping
+        if (Math.abs(a) <= 3037000499L && Math.abs(b) <= 3037000499L && a != Long.MIN_VALUE && b != Long.MIN_VALUE)
+            return a * b;
+
+        if (a == 0 || b == 0)
+            return 0;
+
+        return ((a < 0) == (b < 0)) ? Long.MAX_VALUE : Long.MIN_VALUE;
+    }
+
+    private int slot(int line, int operand) {
+        int opcode = program.opcodes[line];
+        if (!Opcode.usesDataOperand(opcode, operand) || Opcode.getArrayOperand(opcode) == operand)
+            return -1;
+
+        int address = address(line, operand);
+        return (address >= 0 && address < slotOf.length) ? slotOf[address] : -1;
+    }
+
+    private int address(int line, int operand) {
+        switch (operand) {
+            case 1: return program.addr1[line];
+            case 2: return program.addr2[line];
+            default: return program.addr3[line];
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package edu.dsu.bpi;
+
+public interface WatchListener {
+    void watchpointHit(Watchpoint watchpoint, int line, int address, boolean write, long value);
+}
@@ -0,0 +1,87 @@
+package edu.dsu.bpi;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A watchpoint on a range of data locations: an absolute address or range (12, data[10..19]), or in
+ * label mode a data symbol, one of its words or a range of them (sym14, sym14[3], sym14[2..5]). It
+ * always catches writes and can also catch reads, and either halts the program after the line that
+ * touched it or only reports the access.
+ */
+public final class Watchpoint {
+    private static final Pattern ADDRESS = Pattern.compile("(?:data\\[)?(\\d+)(?:\\.\\.(\\d+))?(\\])?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SYMBOL = Pattern.compile("sym(\\d+)(?:\\[(\\d+)(?:\\.\\.(\\d+))?\\])?", Pattern.CASE_INSENSITIVE);
+
+    private final String location; // as entered, without whitespace
+    private final boolean reads; // writes are always watched
+    private final boolean halt; // false only reports the access
+    int first, last; // absolute addresses, resolved against the symbols of the loaded program
+    int hits;
+
+    Watchpoint(String location, boolean reads, boolean halt) {
+        this.location = location.replaceAll("\\s+", "");
+        this.reads = reads;
+        this.halt = halt;
+    }
+
+    public String getLocation() { return location; }
+    public boolean watchesReads() { return reads; }
+    public boolean halts() { return halt; }
+    public int getFirstAddress() { return first; }
+    public int getLastAddress() { return last; }
+    public int getHits() { return hits; }
+    public boolean covers(int address) { return address >= first && address <= last; }
+
+    void resolve(boolean labels, Map<Integer, Integer> symbols, Map<Integer, Integer> sizes, int memorySize) {
+        int[] range = resolveRange(location, labels, symbols, sizes, memorySize);
+        first = range[0];
+        last = range[1];
+    }
+
+    // first and last address of a location, also used for the cells a logpoint reports
+    static int[] resolveRange(String location, boolean labels, Map<Integer, Integer> symbols, Map<Integer, Integer> sizes, int memorySize) {
+        int first, last;
+        Matcher m = ADDRESS.matcher(location);
+        if (m.matches() && location.toLowerCase().startsWith("data[") == (m.group(3) != null)) {
+            first = Integer.parseInt(m.group(1));
+            last = (m.group(2) == null) ? first : Integer.parseInt(m.group(2));
+            if (last >= memorySize)
+                throw new IllegalArgumentException("data location " + last + " is outside memory");
+        } else if ((m = SYMBOL.matcher(location)).matches()) {
+            if (!labels)
+                throw new IllegalArgumentException("data symbols can only be used in label mode");
+
+            int symbol = Integer.parseInt(m.group(1));
+            if (!symbols.containsKey(symbol))
+                throw new IllegalArgumentException("data symbol " + symbol + " has not been defined");
+
+            int size = sizes.get(symbol);
+            int from = (m.group(2) == null) ? 0 : Integer.parseInt(m.group(2));
+            int to = (m.group(2) == null) ? size - 1 : (m.group(3) == null) ? from : Integer.parseInt(m.group(3));
+            if (to >= size)
+                throw new IllegalArgumentException("offset " + to + " is outside data symbol " + symbol);
+
+            first = symbols.get(symbol) + from;
+            last = symbols.get(symbol) + to;
+        } else
+            throw new IllegalArgumentException(location + " isn't a data location, range or symbol");
+
+        if (first > last)
+            throw new IllegalArgumentException("the range " + location + " is empty");
+
+        return new int[] { first, last };
+    }
+
+    public String describeHit(int line, int address, boolean write, long value) {
+        return "Watchpoint on " + location + ": row " + line + (write ? " wrote " + value + " to" : " read " + value + " from") + " data[" + address + "]";
+    }
+
+    @Override
+    public String toString() {
+        String range = "data[" + first + ((first == last) ? "" : ".." + last) + "]";
+        return location + (location.equalsIgnoreCase(range) ? "" : " (" + range + ")") + ", "
+                + (reads ? "reads and writes" : "writes") + (halt ? "" : ", log only");
+    }
+}
@@ -0,0 +1,42 @@
+package edu.dsu.bpi.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A run of consecutive program lines that is only entered at its first line and only left after its
+ * last, so every line in it runs whenever the block does.
+ */
+public final class BasicBlock {
+    private final int index, firstLine, lastLine;
+    final List<BasicBlock> successors = new ArrayList<>(2); // fall-through first, then the branch target
+    final List<BasicBlock> predecessors = new ArrayList<>(2);
+    boolean leavesProgram; // the last line can continue to a line without a card
+    int preorder = -1; // depth-first number from the entry block, -1 if it can't be reached
+    BasicBlock immediateDominator;
+    Loop loop;
+
+    BasicBlock(int index, int firstLine, int lastLine) {
+        this.index = index;
+        this.firstLine = firstLine;
+        this.lastLine = lastLine;
+    }
+
+    public int getIndex() { return index; }
+    public int getFirstLine() { return firstLine; }
+    public int getLastLine() { return lastLine; }
+    public int getLineCount() { return lastLine - firstLine + 1; }
+    public List<BasicBlock> getSuccessors() { return Collections.unmodifiableList(successors); }
+    public List<BasicBlock> getPredecessors() { return Collections.unmodifiableList(predecessors); }
+    public boolean leavesProgram() { return leavesProgram; }
+    public boolean isReachable() { return preorder != -1; }
+    public BasicBlock getImmediateDominator() { return immediateDominator; } // null for the entry and unreachable blocks
+    public Loop getLoop() { return loop; } // innermost loop containing the block, null if it isn't in one
+    public int getLoopDepth() { return (loop == null) ? 0 : loop.getDepth(); }
+
+    @Override
+    public String toString() {
+        return "B" + index + " [" + firstLine + ((lastLine == firstLine) ? "" : "-" + lastLine) + "]";
+    }
+}
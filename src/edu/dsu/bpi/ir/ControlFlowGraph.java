@@ -0,0 +1,141 @@
+package edu.dsu.bpi.ir;
+
+import edu.dsu.bpi.DecodedProgram;
+import edu.dsu.bpi.Opcode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Basic blocks of a loaded program and the edges between them, from fall-through and from the
+ * compare and +7 branches, along with its dominator tree and loop nesting. Branches are already
+ * resolved to absolute lines by the loader, so raw and label mode programs are built the same way.
+ * Building is a few linear passes over the lines and blocks.
+ */
+public final class ControlFlowGraph {
+    private final List<BasicBlock> blocks;
+    private final BasicBlock[] blockAt; // block containing each line
+    private final List<BasicBlock> preorder; // reachable blocks in depth-first order from the entry
+    private final List<BasicBlock> reversePostorder;
+    private final DominatorTree dominators;
+    private final LoopNest loops;
+
+    private ControlFlowGraph(DecodedProgram program, int programSize) {
+        blockAt = new BasicBlock[programSize];
+        blocks = split(program, programSize);
+        for (BasicBlock block : blocks)
+            link(program, programSize, block);
+
+        preorder = new ArrayList<>(blocks.size());
+        reversePostorder = new ArrayList<>(blocks.size());
+        int[] parent = search();
+
+        dominators = new DominatorTree(blocks, preorder, parent);
+        loops = new LoopNest(blocks, preorder, dominators);
+    }
+
+    public static ControlFlowGraph build(DecodedProgram program, int programSize) {
+        if (programSize <= 0)
+            throw new IllegalArgumentException("No program cards were loaded");
+
+        return new ControlFlowGraph(program, programSize);
+    }
+
+    public BasicBlock getEntry() { return blocks.get(0); }
+    public List<BasicBlock> getBlocks() { return Collections.unmodifiableList(blocks); }
+    public int getBlockCount() { return blocks.size(); }
+    public BasicBlock getBlock(int line) { return (line >= 0 && line < blockAt.length) ? blockAt[line] : null; }
+    public int getProgramSize() { return blockAt.length; }
+    public List<BasicBlock> getPreorder() { return Collections.unmodifiableList(preorder); }
+    public List<BasicBlock> getReversePostorder() { return Collections.unmodifiableList(reversePostorder); }
+    public DominatorTree getDominators() { return dominators; }
+    public LoopNest getLoops() { return loops; }
+
+    private List<BasicBlock> split(DecodedProgram program, int programSize) {
+        // a block starts at line 0, at every branch target, and after every branch or line that doesn't fall through
+        boolean[] leader = new boolean[programSize + 1];
+        leader[0] = true;
+        for (int line = 0; line < programSize; line++) {
+            int opcode = program.getOpcode(line);
+            if (Opcode.isBranch(opcode)) {
+                int target = program.getTarget(line);
+                if (target >= 0 && target < programSize)
+                    leader[target] = true;
+
+                leader[line + 1] = true;
+            } else if (!Opcode.fallsThrough(opcode, line))
+                leader[line + 1] = true;
+        }
+
+        List<BasicBlock> split = new ArrayList<>();
+        int first = 0;
+        for (int line = 1; line <= programSize; line++) {
+            if (leader[line] || line == programSize) {
+                BasicBlock block = new BasicBlock(split.size(), first, line - 1);
+                Arrays.fill(blockAt, first, line, block);
+                split.add(block);
+                first = line;
+            }
+        }
+
+        return split;
+    }
+
+    private void link(DecodedProgram program, int programSize, BasicBlock block) {
+        int line = block.getLastLine(), opcode = program.getOpcode(line);
+        if (Opcode.fallsThrough(opcode, line))
+            edge(block, line + 1);
+        if (Opcode.isBranch(opcode))
+            edge(block, program.getTarget(line));
+    }
+
+    private void edge(BasicBlock from, int line) {
+        if (line < 0 || line >= blockAt.length) {
+            from.leavesProgram = true;
+            return;
+        }
+
+        BasicBlock to = blockAt[line];
+        if (!from.successors.contains(to)) { // a branch to the next line is a single edge
+            from.successors.add(to);
+            to.predecessors.add(from);
+        }
+    }
+
+    private int[] search() { // numbers reachable blocks depth-first, returns each one's parent by preorder number
+        int[] parent = new int[blocks.size()];
+        int[] nextEdge = new int[blocks.size()];
+        BasicBlock[] stack = new BasicBlock[blocks.size()];
+        List<BasicBlock> postorder = new ArrayList<>(blocks.size());
+        int depth = 0;
+
+        BasicBlock entry = getEntry();
+        entry.preorder = 0;
+        preorder.add(entry);
+        parent[0] = -1;
+        stack[depth++] = entry;
+
+        while (depth > 0) {
+            BasicBlock block = stack[depth - 1];
+            if (nextEdge[block.getIndex()] < block.successors.size()) {
+                BasicBlock successor = block.successors.get(nextEdge[block.getIndex()]++);
+                if (successor.preorder == -1) {
+                    successor.preorder = preorder.size();
+                    parent[successor.preorder] = block.preorder;
+                    preorder.add(successor);
+                    stack[depth++] = successor;
+                }
+            } else {
+                postorder.add(block);
+                depth--;
+            }
+        }
+
+        for (int i = postorder.size() - 1; i >= 0; i--)
+            reversePostorder.add(postorder.get(i));
+
+        return parent;
+    }
+}
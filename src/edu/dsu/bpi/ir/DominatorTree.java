@@ -0,0 +1,120 @@
+package edu.dsu.bpi.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Dominators of the reachable blocks, found with the Lengauer-Tarjan algorithm (path compression,
+ * near-linear in the number of edges). The tree is numbered on entry and exit so a dominance query
+ * is a constant-time interval check.
+ */
+public final class DominatorTree {
+    private final List<List<BasicBlock>> children; // by block index
+    private final int[] enter, exit; // interval of each block in the tree, by block index
+
+    DominatorTree(List<BasicBlock> blocks, List<BasicBlock> preorder, int[] parent) {
+        int n = preorder.size();
+        int[] semi = new int[n], idom = new int[n], ancestor = new int[n], label = new int[n];
+        int[] bucketHead = new int[n], bucketNext = new int[n]; // blocks waiting on each semidominator
+        int[] path = new int[n];
+
+        for (int v = 0; v < n; v++) {
+            semi[v] = label[v] = v;
+            ancestor[v] = bucketHead[v] = -1;
+        }
+
+        for (int w = n - 1; w > 0; w--) {
+            for (BasicBlock predecessor : preorder.get(w).predecessors) {
+                if (predecessor.preorder == -1)
+                    continue; // unreachable code doesn't dominate anything
+
+                int u = eval(predecessor.preorder, ancestor, label, semi, path);
+                if (semi[u] < semi[w])
+                    semi[w] = semi[u];
+            }
+
+            bucketNext[w] = bucketHead[semi[w]];
+            bucketHead[semi[w]] = w;
+            ancestor[w] = parent[w];
+
+            for (int v = bucketHead[parent[w]]; v != -1; v = bucketNext[v]) {
+                int u = eval(v, ancestor, label, semi, path);
+                idom[v] = (semi[u] < semi[v]) ? u : parent[w];
+            }
+            bucketHead[parent[w]] = -1;
+        }
+
+        for (int w = 1; w < n; w++) {
+            if (idom[w] != semi[w])
+                idom[w] = idom[idom[w]];
+
+            preorder.get(w).immediateDominator = preorder.get(idom[w]);
+        }
+
+        children = new ArrayList<>(blocks.size());
+        for (int i = 0; i < blocks.size(); i++)
+            children.add(new ArrayList<BasicBlock>(2));
+        for (int w = 1; w < n; w++)
+            children.get(preorder.get(idom[w]).getIndex()).add(preorder.get(w));
+
+        enter = new int[blocks.size()];
+        exit = new int[blocks.size()];
+        number(preorder.get(0), blocks.size());
+    }
+
+    public BasicBlock getImmediateDominator(BasicBlock block) { return block.immediateDominator; }
+    public List<BasicBlock> getChildren(BasicBlock block) { return Collections.unmodifiableList(children.get(block.getIndex())); }
+
+    public boolean dominates(BasicBlock a, BasicBlock b) { // every path from the entry to b goes through a (a block dominates itself)
+        if (!a.isReachable() || !b.isReachable())
+            return false;
+
+        return enter[a.getIndex()] <= enter[b.getIndex()] && exit[b.getIndex()] <= exit[a.getIndex()];
+    }
+
+    public boolean strictlyDominates(BasicBlock a, BasicBlock b) {
+        return a != b && dominates(a, b);
+    }
+
+    private static int eval(int v, int[] ancestor, int[] label, int[] semi, int[] path) {
+        if (ancestor[v] == -1)
+            return v;
+
+        // compress the path to the root of v's tree, nearest the root first
+        int length = 0;
+        for (int x = v; ancestor[ancestor[x]] != -1; x = ancestor[x])
+            path[length++] = x;
+
+        while (length > 0) {
+            int x = path[--length], a = ancestor[x];
+            if (semi[label[a]] < semi[label[x]])
+                label[x] = label[a];
+
+            ancestor[x] = ancestor[a];
+        }
+
+        return label[v];
+    }
+
+    private void number(BasicBlock root, int blockCount) { // depth-first over the tree, without recursion
+        BasicBlock[] stack = new BasicBlock[blockCount];
+        int[] nextChild = new int[blockCount];
+        int depth = 0, clock = 0;
+
+        stack[depth++] = root;
+        enter[root.getIndex()] = clock++;
+        while (depth > 0) {
+            BasicBlock block = stack[depth - 1];
+            List<BasicBlock> below = children.get(block.getIndex());
+            if (nextChild[block.getIndex()] < below.size()) {
+                BasicBlock child = below.get(nextChild[block.getIndex()]++);
+                enter[child.getIndex()] = clock++;
+                stack[depth++] = child;
+            } else {
+                exit[block.getIndex()] = clock++;
+                depth--;
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package edu.dsu.bpi.ir;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A natural loop: its header dominates every block in it, and each latch branches back to the header.
+ * Loops sharing a header are merged into one.
+ */
+public final class Loop {
+    private final BasicBlock header;
+    final List<BasicBlock> latches = new ArrayList<>(1);
+    final List<BasicBlock> blocks = new ArrayList<>(); // including those of nested loops
+    final List<Loop> children = new ArrayList<>(1);
+    Loop parent;
+    int depth;
+
+    Loop(BasicBlock header) {
+        this.header = header;
+    }
+
+    public BasicBlock getHeader() { return header; }
+    public List<BasicBlock> getLatches() { return Collections.unmodifiableList(latches); }
+    public List<BasicBlock> getBlocks() { return Collections.unmodifiableList(blocks); }
+    public List<Loop> getChildren() { return Collections.unmodifiableList(children); }
+    public Loop getParent() { return parent; } // null for an outermost loop
+    public int getDepth() { return depth; } // 1 for an outermost loop
+
+    public boolean contains(BasicBlock block) {
+        for (Loop loop = block.loop; loop != null; loop = loop.parent) {
+            if (loop == this)
+                return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "Loop at " + header + ", depth " + depth + ", " + blocks.size() + " block" + ((blocks.size() == 1) ? "" : "s");
+    }
+}
@@ -0,0 +1,112 @@
+package edu.dsu.bpi.ir;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Natural loops of the reachable blocks and how they nest. Headers are visited innermost first and
+ * each finished loop collapses into its header (union-find), so every edge is walked about once.
+ * A cycle entered other than through a dominating header isn't a natural loop and isn't reported.
+ */
+public final class LoopNest {
+    private final List<Loop> loops = new ArrayList<>(); // outermost first
+    private final List<Loop> topLevel = new ArrayList<>();
+
+    LoopNest(List<BasicBlock> blocks, List<BasicBlock> preorder, DominatorTree dominators) {
+        int[] representative = new int[blocks.size()]; // header of the outermost loop found so far around each block
+        int[] mark = new int[blocks.size()]; // header of the loop being collected when the block was reached
+        Loop[] loopAt = new Loop[blocks.size()]; // by header index
+        List<Loop> innermostFirst = new ArrayList<>();
+        Deque<Integer> worklist = new ArrayDeque<>();
+
+        for (int i = 0; i < blocks.size(); i++) {
+            representative[i] = i;
+            mark[i] = -1;
+        }
+
+        // a header nested in another loop is reached after that loop's header by the depth-first search
+        for (int p = preorder.size() - 1; p >= 0; p--) {
+            BasicBlock header = preorder.get(p);
+            int h = header.getIndex();
+            Loop loop = null;
+
+            for (BasicBlock latch : header.predecessors) {
+                if (!dominators.dominates(header, latch))
+                    continue; // not a back edge
+
+                if (loop == null)
+                    loop = new Loop(header);
+
+                loop.latches.add(latch);
+                worklist.push(find(representative, latch.getIndex()));
+            }
+
+            if (loop == null)
+                continue;
+
+            loopAt[h] = loop;
+            header.loop = loop;
+            loop.blocks.add(header);
+            mark[h] = h;
+
+            while (!worklist.isEmpty()) {
+                int x = worklist.pop();
+                if (mark[x] == h)
+                    continue;
+
+                mark[x] = h;
+                representative[x] = h;
+
+                BasicBlock block = blocks.get(x);
+                if (loopAt[x] != null) { // an inner loop, already complete
+                    loopAt[x].parent = loop;
+                    loop.children.add(loopAt[x]);
+                    loop.blocks.addAll(loopAt[x].blocks);
+                } else {
+                    block.loop = loop;
+                    loop.blocks.add(block);
+                }
+
+                for (BasicBlock predecessor : block.predecessors) {
+                    if (predecessor.isReachable()) {
+                        int r = find(representative, predecessor.getIndex());
+                        if (mark[r] != h)
+                            worklist.push(r);
+                    }
+                }
+            }
+
+            innermostFirst.add(loop);
+        }
+
+        for (int i = innermostFirst.size() - 1; i >= 0; i--) {
+            Loop loop = innermostFirst.get(i);
+            loop.depth = (loop.parent == null) ? 1 : loop.parent.depth + 1;
+            loops.add(loop);
+            if (loop.parent == null)
+                topLevel.add(loop);
+        }
+    }
+
+    public List<Loop> getLoops() { return Collections.unmodifiableList(loops); }
+    public List<Loop> getTopLevelLoops() { return Collections.unmodifiableList(topLevel); }
+    public int getLoopCount() { return loops.size(); }
+    public Loop getLoop(BasicBlock block) { return block.loop; } // innermost, null if the block isn't in a loop
+
+    private static int find(int[] representative, int block) {
+        int root = block;
+        while (representative[root] != root)
+            root = representative[root];
+
+        while (representative[block] != root) { // compress
+            int next = representative[block];
+            representative[block] = root;
+            block = next;
+        }
+
+        return root;
+    }
+}
@@ -0,0 +1,59 @@
+package edu.dsu.bpi;
+
+/**
+ * Times a program in each execution tier on its own: the switch interpreter, the closure tier and
+ * compiled bytecode. Every run parses the program again first, so the first run shows
+ * what each tier costs to build and the mean shows its steady state.
+ *
+ * Usage: java -cp BabelfishPI.jar:tools-out edu.dsu.bpi.TierBenchmark "infile.txt" [-l] [runs]
+ */
+public class TierBenchmark {
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.out.println("Usage: TierBenchmark \"infile.txt\" [-l] [runs]");
+            return;
+        }
+
+        boolean labels = false;
+        int runs = 20;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-l"))
+                labels = true;
+            else
+                runs = Integer.parseInt(args[i]);
+        }
+
+        Interpreter interp = new Interpreter(args[0], labels);
+        interp.setOutputListener(null); // only time execution
+
+        System.out.println("Tier\t\tFirst run (us)\tMean run (us)\tInstructions");
+        for (Tier tier : Tier.values()) {
+            interp.setClosureEnabled(tier == Tier.CLOSURE);
+            interp.setClosureThreshold(0);
+            interp.setCompilationEnabled(tier == Tier.COMPILED);
+            interp.setCompileThreshold(0);
+
+            long first = 0, total = 0;
+            for (int i = 0; i < runs; i++) {
+                interp.parseProgram(null);
+
+                long start = System.nanoTime();
+                try {
+                    interp.runToCompletion();
+                } catch (Exception e) {
+                    System.out.println("Error: " + e.getMessage());
+                    return;
+                }
+                long elapsed = System.nanoTime() - start;
+
+                if (i == 0)
+                    first = elapsed;
+                else
+                    total += elapsed;
+            }
+
+            System.out.println(String.format("%-12s\t%14d\t%13d\t%d", tier, first / 1000,
+                    (runs > 1) ? total / (runs - 1) / 1000 : 0, interp.getTierReport().getInstructionCount(tier)));
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package edu.dsu.bpi;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs programs through every way the interpreter can execute them and checks that they agree with
+ * stepping one line at a time: the output, the fault message and its file line, the instruction
+ * count and data memory. The modes are the fast interpreter (-n, with superinstructions and loop
+ * idioms), the closure tier, compiled bytecode (-c), promotion part way through a run, the same
+ * again stopped by an instruction budget every few lines and resumed, and promotion with loop
+ * detection on, which must never stop a program that ends. The built-in programs cover the corner
+ * cases each tier handles separately; random programs, label-mode programs whose arrays are reached
+ * at negative and past-the-end offsets, and loop idioms cover the rest.
+ *
+ * The developer tools aren't shipped in the jar, build them next to it first:
+ * javac -cp BabelfishPI.jar -d tools-out tools/edu/dsu/bpi/*.java
+ *
+ * Usage: java -cp BabelfishPI.jar:tools-out edu.dsu.bpi.TierCheck [-l] [--random #count] [--seed #seed] ["infile.txt"]...
+ */
+public class TierCheck {
+    private static final int MAX_STEPS = 100000; // programs the stepping reference can't finish in this many lines are skipped
+    private static final int TIMEOUT = 10; // seconds a mode gets before it counts as running away
+    private static final int BUDGET = 5; // instruction limit of the budgeted modes
+
+    private enum Mode {
+        INTERPRETER("-n"), CLOSURE("closure tier"), COMPILED("-c"), TIERED("promoted while running"),
+        INTERPRETER_BUDGETED("-n, budgeted"), TIERED_BUDGETED("promoted, budgeted"), DETECTING("promoted, detecting loops");
+
+        private final String description;
+
+        Mode(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private static final String[][] PROGRAMS = { // name, then the cards of a raw program
+            { "branch to a missing line",
+                    "+0000000000", "+9999999999",
+                    "+4000000050", // 0 == 0, go to line 50
+                    "+9000000000", "+9999999999" },
+            { "branch to a missing line from a hot loop",
+                    "+0000000000", "+0000000020", "+0000000015", "+9999999999",
+                    "+7000001000", // count to 20
+                    "-4000002002", // at 15 go to line 2, which isn't there
+                    "+9999999999" },
+            { "end card on line 0",
+                    "+0000000007", "+9999999999",
+                    "+9000000000", // doesn't end the program on line 0
+                    "-8000000000",
+                    "+9000000000", "+9999999999" },
+            { "end card with operands",
+                    "+0000000005", "+0000000000", "+0000000003", "+9999999999",
+                    "+9001002003", // runs as a no-op
+                    "-8000000000",
+                    "+7001002000",
+                    "+9000000000", "+9999999999" },
+            { "falls off the last card",
+                    "+0000000001", "+0000000000", "+0000000004", "+9999999999",
+                    "-8000000000",
+                    "+7001002000", "+9999999999" },
+            { "overflow in a hot loop",
+                    "+0000000001", "+0000000002", "+0000000000", "+0000000100", "+9999999999",
+                    "+2000001000", // doubles until it no longer fits
+                    "-8000000000",
+                    "+7002003000",
+                    "+9000000000", "+9999999999" },
+            { "underflow",
+                    "-9999999990", "+0000000001", "+0000000000", "+0000000100", "+9999999999",
+                    "-1000001000",
+                    "+7002003000",
+                    "+9000000000", "+9999999999" },
+            { "square overflow",
+                    "+0000100000", "+9999999999",
+                    "+3000000001",
+                    "-8001000000",
+                    "+9000000000", "+9999999999" },
+            { "divide by zero in a hot loop",
+                    "+0000000100", "+0000000003", "+0000000000", "+0000000010", "+0000000001", "+9999999999",
+                    "-2000001005", // 100 / 3, 2, 1, 0
+                    "-8005000000",
+                    "-1001004001",
+                    "+7002003000",
+                    "+9000000000", "+9999999999" },
+            { "negative array index",
+                    "+0000000002", "+0000000001", "+0000000010", "+0000000020", "+0000000030", "+0000000000", "+0000000010", "+9999999999",
+                    "+6002000007", // data[2 + index] for index 2 down to -3
+                    "-8007000000",
+                    "-1000001000",
+                    "+7005006000",
+                    "+9000000000", "+9999999999" },
+            { "negative index on a store",
+                    "-0000000004", "+0000000001", "+9999999999",
+                    "-6001000000",
+                    "+9000000000", "+9999999999" },
+            { "index too large for an int",
+                    "+5000000001", "+0000000001", "+9999999999",
+                    "+6001000002",
+                    "-8002000000",
+                    "+9000000000", "+9999999999" },
+            { "uninitialized read in a loop",
+                    "+0000000000", "+0000000005", "+0000000000", "+9999999999",
+                    "+6002000003", // data[2], then the uninitialized data[3]
+                    "-8003000000",
+                    "+7000001000",
+                    "+9000000000", "+9999999999" },
+            { "input runs out",
+                    "+0000000000", "+0000000010", "+9999999999",
+                    "+8000000002",
+                    "-8002000000",
+                    "+7000001000",
+                    "+9000000000", "+9999999999",
+                    "+0000000004", "-0000000005", "+0000000006" },
+            { "unsupported operations",
+                    "+0000000000", "+0000000003", "+9999999999",
+                    "+7000001002",
+                    "-9000000000",
+                    "+4000000000", // back to line 0 until the count reaches 3
+                    "+9000000000", "+9999999999" },
+            { "sum, copy, fill and maximum idioms",
+                    "+0000000003", "-0000000001", "+0000000004", "+0000000001", "+0000000005", // 0-4 array
+                    "+0000000000", "+0000000005", "+0000000000", "+0000000000", "+0000000000", // 5 counter, 6 limit, 7 t, 8 acc, 9 max
+                    "+0000000000", "+0000000000", "+0000000000", "+0000000000", "+0000000000", // 10-14 copy
+                    "+0000000000", "+0000000099", "+9999999999",
+                    "+6000005007", "+1008007008", "+7005006000", // sum
+                    "+0015000005", "+6000005007", "-6007010005", "+7005006004", // copy
+                    "+0015000005", "-6016010005", "+7005006008", // fill
+                    "+0015000005", "+0000000009", "+6000005007", "+5009007015", "+0007000009", "+7005006012", // maximum
+                    "-8008000000", "-8009000000", "-8010000000", "-8014000000",
+                    "+9000000000", "+9999999999" },
+            { "sum idiom that overflows part way",
+                    "+9999999990", "+0000000007", "+0000000005", "+0000000000", "+0000000003", "+0000000000", "+9999999999",
+                    "+6000003005", // fits the first time, not the second
+                    "+1006005006",
+                    "+7003004000",
+                    "-8006000000",
+                    "+9000000000", "+9999999999" },
+    };
+
+    private static final String[][] LABEL_PROGRAMS = { // the same, with data symbols declared by pairs of cards
+            { "negative offset writes below an array",
+                    "+0010001000", "+0000000000", // x
+                    "+0011002000", "+0000000000", // arr[2]
+                    "+0012001000", "-0000000001", // i
+                    "+0013001000", "+9000000000", // big
+                    "+9999999999",
+                    "-6013011012", // arr[-1] is x
+                    "+1010010010", // so this overflows
+                    "-8010000000",
+                    "+9000000000", "+9999999999" },
+    };
+
+    public static void main(String[] args) throws Exception {
+        boolean labels = false;
+        int randomPrograms = 500;
+        long seed = 1;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-l"))
+                labels = true;
+            else if (args[i].equalsIgnoreCase("--random") && args.length > i+1)
+                randomPrograms = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("--seed") && args.length > i+1)
+                seed = Long.parseLong(args[++i]);
+            else if (args[i].startsWith("-")) {
+                System.out.println("Usage: TierCheck [-l] [--random #count] [--seed #seed] [\"infile.txt\"]...");
+                return;
+            } else
+                files.add(args[i]);
+        }
+
+        TierCheck check = new TierCheck();
+        try {
+            for (String file : files)
+                check.check(file, file, labels);
+
+            File temp = File.createTempFile("tiercheck", ".txt");
+            temp.deleteOnExit();
+            for (String[] program : PROGRAMS)
+                check.check(program[0], write(temp, Arrays.asList(program).subList(1, program.length)), false);
+            for (String[] program : LABEL_PROGRAMS)
+                check.check(program[0], write(temp, Arrays.asList(program).subList(1, program.length)), true);
+
+            Random random = new Random(seed);
+            for (int i = 0; i < randomPrograms; i++) {
+                check.check("random program " + i + " (seed " + seed + ")", write(temp, randomProgram(random)), false);
+                check.check("random loop idiom " + i + " (seed " + seed + ")", write(temp, randomLoopIdiom(random)), false);
+                check.check("random label program " + i + " (seed " + seed + ")", write(temp, randomLabelProgram(random)), true);
+            }
+        } finally {
+            check.pool.shutdownNow();
+        }
+
+        System.out.println(check.programs + " programs checked in " + Mode.values().length + " modes, " + check.skipped
+                + " skipped because they ran too long, " + check.mismatches + " mismatched");
+        if (check.mismatches > 0)
+            System.exit(1);
+    }
+
+    private ExecutorService pool = newPool();
+    private int programs, skipped, mismatches;
+
+    private void check(String name, String file, boolean labels) throws Exception {
+        Result expected = stepped(file, labels);
+        if (expected == null) {
+            skipped++;
+            return;
+        }
+
+        programs++;
+        for (Mode mode : Mode.values()) {
+            String difference;
+            try {
+                difference = expected.compare(run(file, labels, mode, expected.instructions));
+            } catch (TimeoutException e) {
+                difference = "didn't finish in " + TIMEOUT + " seconds";
+                pool.shutdownNow(); // the thread can't be stopped, leave it to the JVM's exit
+                pool = newPool();
+            }
+
+            if (difference != null) {
+                mismatches++;
+                System.out.println("Mismatch in " + name + " with " + mode + ": " + difference);
+            }
+        }
+    }
+
+    private static Result stepped(String file, boolean labels) throws Exception { // the reference, one line at a time
+        Interpreter interp = load(file, labels);
+        Result result = new Result(interp);
+        try {
+            for (int steps = 0; !interp.programComplete(); steps++) {
+                if (steps == MAX_STEPS)
+                    return null;
+                interp.runNextInstruction();
+            }
+        } catch (Exception e) {
+            result.fault(e);
+        }
+
+        return result.finish(interp);
+    }
+
+    private Result run(final String file, final boolean labels, final Mode mode, final long instructions) throws Exception {
+        Future<Result> future = pool.submit(new Callable<Result>() {
+            @Override
+            public Result call() throws Exception {
+                Interpreter interp = load(file, labels);
+                boolean tiered = mode == Mode.TIERED || mode == Mode.TIERED_BUDGETED || mode == Mode.DETECTING;
+                interp.setClosureEnabled(mode == Mode.CLOSURE || tiered);
+                interp.setClosureThreshold((mode == Mode.CLOSURE) ? 0 : 2);
+                interp.setCompilationEnabled(mode == Mode.COMPILED || tiered);
+                interp.setCompileThreshold((mode == Mode.COMPILED) ? 0 : 5);
+                if (mode == Mode.INTERPRETER_BUDGETED || mode == Mode.TIERED_BUDGETED)
+                    interp.setInstructionLimit(BUDGET);
+                interp.setLoopDetectionEnabled(mode == Mode.DETECTING); // the reference ended, so no state repeats
+
+                Result result = new Result(interp);
+                try {
+                    for (long stops = 0; !interp.runToCompletion(); stops++) {
+                        if (interp.getExhaustedBudget() == null || stops > instructions)
+                            throw new Exception("Stopped " + stops + " times, last on row " + interp.getInstructionPointer());
+                    }
+                } catch (Exception e) {
+                    result.fault(e);
+                }
+
+                return result.finish(interp);
+            }
+        });
+
+        try {
+            return future.get(TIMEOUT, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw new Exception(e.getCause());
+        }
+    }
+
+    private static Interpreter load(String file, boolean labels) throws Exception {
+        Interpreter interp = new Interpreter(file, labels);
+        interp.setLoopDetectionEnabled(false); // detection samples differently in each tier, the step limit ends runaway programs instead
+        return interp;
+    }
+
+    private static ExecutorService newPool() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "TierCheck");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static String write(File file, List<String> cards) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            for (String card : cards)
+                writer.write(card + System.getProperty("line.separator"));
+        }
+
+        return file.getPath();
+    }
+
+    private static List<String> randomProgram(Random random) { // a few words of data, any mix of operations, a few input cards
+        List<String> cards = new ArrayList<>();
+        int words = 3 + random.nextInt(10);
+        for (int i = 0; i < words; i++)
+            cards.add(value(randomValue(random)));
+        cards.add("+9999999999");
+
+        int lines = 3 + random.nextInt(12);
+        for (int i = 0; i < lines - 1; i++) {
+            int kind = random.nextInt(20);
+            boolean positive = random.nextBoolean();
+            if (kind < 14) // arithmetic, moves and arrays
+                cards.add(card(positive, kind % 7, address(random, words), address(random, words), address(random, words)));
+            else if (kind < 18) // compares and +7
+                cards.add(card(kind < 17 ? positive : true, (kind < 17) ? 4 + random.nextInt(2) : 7,
+                        address(random, words), address(random, words), line(random, lines)));
+            else if (kind < 19) // read or print
+                cards.add(card(positive, 8, address(random, words), 0, address(random, words)));
+            else // -0, -9, -7 and +9 with operands
+                cards.add(card(random.nextBoolean(), random.nextBoolean() ? 0 : (random.nextBoolean() ? 9 : 7),
+                        random.nextInt(3), random.nextInt(3), random.nextInt(3)));
+        }
+        cards.add("+9000000000");
+        cards.add("+9999999999");
+
+        for (int i = random.nextInt(7); i > 0; i--)
+            cards.add(value(random.nextInt(41) - 20));
+
+        return cards;
+    }
+
+    private static List<String> randomLabelProgram(Random random) { // small arrays, indexed by symbols a little out of their bounds
+        List<String> cards = new ArrayList<>();
+        int values = 2 + random.nextInt(5), indexes = 1 + random.nextInt(2);
+        for (int i = 0; i < values; i++) {
+            cards.add(card(true, 0, 10 + i, 1 + random.nextInt(3), 0));
+            cards.add(value(labelValue(random)));
+        }
+        for (int i = 0; i < indexes; i++) {
+            cards.add(card(true, 0, 10 + values + i, 1, 0));
+            cards.add(value(random.nextInt(5) - 2));
+        }
+        cards.add("+9999999999");
+
+        int lines = 3 + random.nextInt(12), labels = 1 + random.nextInt(3);
+        int[] labelAt = new int[labels];
+        for (int i = 0; i < labels; i++)
+            labelAt[i] = random.nextInt(lines);
+
+        for (int i = 0; i < lines - 1; i++) {
+            for (int label = 0; label < labels; label++) {
+                if (labelAt[label] == i)
+                    cards.add(card(false, 7, label + 1, 0, 0));
+            }
+
+            int kind = random.nextInt(20), value = 10 + random.nextInt(values), index = 10 + values + random.nextInt(indexes);
+            boolean positive = random.nextBoolean();
+            if (kind < 5) { // arithmetic and moves
+                int op = random.nextInt(4);
+                cards.add(card(positive || op == 0, op, value, 10 + random.nextInt(values), 10 + random.nextInt(values)));
+            } else if (kind < 10) // array loads and stores at whatever offset the index holds
+                cards.add(positive ? card(true, 6, value, index, 10 + random.nextInt(values)) : card(false, 6, 10 + random.nextInt(values), value, index));
+            else if (kind < 13) { // a store that may land below its array, then doubling the symbol there, which only fits if it didn't
+                int array = 11 + random.nextInt(values - 1);
+                cards.add(card(false, 6, value, array, index));
+                cards.add(card(true, 1, array - 1, array - 1, array - 1));
+            } else if (kind < 16) // compares and +7 on an index
+                cards.add(card(kind < 15 ? positive : true, (kind < 15) ? 4 + random.nextInt(2) : 7, (kind < 15) ? value : index,
+                        10 + random.nextInt(values + indexes), 1 + random.nextInt(labels)));
+            else if (kind < 18) // read or print
+                cards.add(card(positive, 8, value, 0, value));
+            else if (kind < 19) // move an index somewhere new
+                cards.add(card(true, 0, 10 + random.nextInt(values + indexes), 0, index));
+            else // -0, -9 and +9 with operands, a -7 declares a label here
+                cards.add(card(random.nextBoolean(), random.nextBoolean() ? 0 : 9, value, value, value));
+        }
+        for (int label = 0; label < labels; label++) {
+            if (labelAt[label] == lines - 1)
+                cards.add(card(false, 7, label + 1, 0, 0));
+        }
+        cards.add("+9000000000");
+        cards.add("+9999999999");
+
+        for (int i = random.nextInt(7); i > 0; i--)
+            cards.add(value(random.nextInt(11) - 3));
+
+        return cards;
+    }
+
+    private static List<String> randomLoopIdiom(Random random) { // a fill, copy, sum or maximum/minimum loop, then print the data
+        List<String> cards = new ArrayList<>();
+        int words = 6 + random.nextInt(11);
+        for (int i = 0; i < words; i++)
+            cards.add(value(random.nextBoolean() ? random.nextInt(13) - 4 : randomValue(random)));
+        cards.add("+9999999999");
+
+        int first = cards.size();
+        for (int i = random.nextInt(3); i > 0; i--)
+            cards.add(card(true, 0, idiomAddress(random, words), 0, idiomAddress(random, words)));
+
+        int head = cards.size() - first;
+        int counter = idiomAddress(random, words), limit = idiomAddress(random, words);
+        int t = idiomAddress(random, words), other = idiomAddress(random, words);
+        switch (random.nextInt(4)) {
+            case 0: // fill
+                cards.add(card(false, 6, idiomAddress(random, words), idiomAddress(random, words), counter));
+                break;
+            case 1: // copy
+                cards.add(card(true, 6, idiomAddress(random, words), counter, t));
+                cards.add(card(false, 6, t, idiomAddress(random, words), counter));
+                break;
+            case 2: // sum
+                cards.add(card(true, 6, idiomAddress(random, words), counter, t));
+                cards.add(random.nextBoolean() ? card(true, 1, other, t, other) : card(true, 1, t, other, other));
+                break;
+            default: // maximum or minimum
+                cards.add(card(true, 6, idiomAddress(random, words), counter, t));
+                boolean positive = random.nextBoolean();
+                cards.add(random.nextBoolean() ? card(positive, 5, t, other, head + 3) : card(positive, 5, other, t, head + 3));
+                cards.add(card(true, 0, t, 0, other));
+        }
+        cards.add(card(true, 7, counter, limit, head));
+
+        for (int i = 0; i < words + 2; i++)
+            cards.add(card(false, 8, i, 0, 0));
+        cards.add("+9000000000");
+        cards.add("+9999999999");
+        return cards;
+    }
+
+    private static long randomValue(Random random) {
+        switch (random.nextInt(8)) {
+            case 0: return random.nextInt(4);
+            case 1: return random.nextInt(101) - 50;
+            case 2: return 99999;
+            case 3: return 9999999998L - random.nextInt(5); // 9999999999 would be a separator card
+            case 4: return -9999999999L + random.nextInt(4);
+            case 5: return random.nextInt(200001) - 100000;
+            default: return random.nextInt(11);
+        }
+    }
+
+    private static int address(Random random, int words) { // now and then past the initialized words
+        return (random.nextInt(100) < 15) ? random.nextInt(words + 3) : random.nextInt(words);
+    }
+
+    private static int idiomAddress(Random random, int words) {
+        return (random.nextInt(100) < 8) ? random.nextInt(words + 4) : random.nextInt(words);
+    }
+
+    private static long labelValue(Random random) { // mostly small, sometimes a value that fits once but not twice
+        switch (random.nextInt(4)) {
+            case 0: return 5000000000L + random.nextInt(1000000000);
+            case 1: return randomValue(random);
+            default: return random.nextInt(10);
+        }
+    }
+
+    private static int line(Random random, int lines) { // now and then a line without a card
+        return (random.nextInt(100) < 5) ? random.nextInt(lines + 2) : random.nextInt(lines);
+    }
+
+    private static String card(boolean positive, int op, int a, int b, int c) {
+        return String.format("%s%d%03d%03d%03d", positive ? "+" : "-", op, a, b, c);
+    }
+
+    private static String value(long value) {
+        return String.format("%s%010d", (value < 0) ? "-" : "+", Math.abs(value));
+    }
+
+    private static final class Result {
+        private final List<Long> output = new ArrayList<>();
+        private String fault;
+        private int faultLine = -1;
+        private long instructions;
+        private long[] data;
+
+        Result(Interpreter interp) {
+            interp.setOutputListener(new OutputListener() {
+                @Override
+                public void valuePrinted(long value) {
+                    output.add(value);
+                }
+            });
+        }
+
+        void fault(Exception e) {
+            fault = e.getMessage();
+            if (e instanceof ProgramFault)
+                faultLine = ((ProgramFault) e).getFileLine();
+        }
+
+        Result finish(Interpreter interp) {
+            instructions = interp.getTierReport().getTotalInstructionCount();
+            data = new long[interp.getProfile().getMemoryWords()];
+            for (int i = 0; i < data.length; i++)
+                data[i] = interp.accessData(i);
+
+            return this;
+        }
+
+        String compare(Result other) { // the first way other differs, null if it doesn't
+            if (!output.equals(other.output))
+                return "printed " + other.output + " instead of " + output;
+            if ((fault == null) ? other.fault != null : !fault.equals(other.fault))
+                return "ended with " + other.fault + " instead of " + fault;
+            if (faultLine != other.faultLine)
+                return "faulted on file line " + other.faultLine + " instead of " + faultLine;
+            if (instructions != other.instructions)
+                return "ran " + other.instructions + " instructions instead of " + instructions;
+
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != other.data[i])
+                    return "left data[" + i + "] = " + other.data[i] + " instead of " + data[i];
+            }
+
+            return null;
+        }
+    }
+}